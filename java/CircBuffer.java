@@ -3,25 +3,38 @@ import java.util.Arrays; // For printing arrays when debugging
 public class CircBuffer {
     // This class implements a circular (or ring) buffer to hold
     // the most recent values of a 1D time series efficiently.
+    //
+    // If `useFloat` is true, samples are copied into a float array instead
+    // of being stored by reference. This halves memory use; values are
+    // converted back to double when extracted.
 	
 	private int bufferLength;
 	private int nbCh;
 	private int index;
 	private int pts;
 	private double[][] buffer;
+	private float[][] floatBuffer;
 
 	public CircBuffer(int n, int m) {
+        this(n, m, false);
+    }
+
+	public CircBuffer(int n, int m, boolean useFloat) {
         bufferLength = n;
         nbCh = m;
         index = 0;
         pts = 0;
-        buffer = new double[bufferLength][nbCh];
+        if (useFloat) {
+            floatBuffer = new float[bufferLength][nbCh];
+        } else {
+            buffer = new double[bufferLength][nbCh];
+        }
     }
 
     public void update(double[] newData) {
 
     	if (newData.length == nbCh) {
-	    	buffer[index] = newData;
+	    	store(newData);
 	    	index++;
 	    	pts++;
 	    	if (index >= bufferLength) { index = 0;}
@@ -30,6 +43,47 @@ public class CircBuffer {
     	}
     }
 
+    public void updateBlock(double[][] block, int offset, int len) {
+        // Write `len` samples of `block` [nbSamples, nbCh], starting at
+        // sample `offset`, in one call.
+        //
+        // As with update(), the rows of `block` are stored by reference
+        // (unless in float mode). If `len` is larger than the buffer, only
+        // the last `bufferLength` samples are kept, as with len calls to
+        // update().
+
+        if (!isValidBlock(block, offset, len, nbCh)) {
+            return;
+        }
+
+        for (int i = 0; i < len; i++) {
+            store(block[offset + i]);
+            index++;
+            if (index >= bufferLength) { index = 0;}
+        }
+        pts += len;
+    }
+
+    static boolean isValidBlock(double[][] block, int offset, int len, int nbCh) {
+        // Check the arguments of updateBlock() (for all buffers) before
+        // anything is written: throws if [offset, offset+len) is not a range
+        // of rows of `block`, and returns false (printing the same message
+        // as update()) if a row does not have nbCh channels.
+
+        if (offset < 0 || len < 0 || offset > block.length - len) {
+            throw new IllegalArgumentException("Rows [" + offset + ", " + ((long) offset + len)
+                + ") are outside of a block of " + block.length + " samples.");
+        }
+        for (int i = offset; i < offset + len; i++) {
+            if (block[i].length != nbCh) {
+                System.out.println("All channels must be updated at once.");
+                return false;
+            }
+        }
+        return true;
+
+    }
+
     public double[][] extract(int nbSamples) {
         // Return an array containing the last `nbSamples` collected in 
         // the circular buffer.
@@ -41,7 +95,13 @@ public class CircBuffer {
 
     	for(int i = 0; i < nbSamples; i++) {
     		extractIndex = mod(index - nbSamples + i, bufferLength);
-    		extractedArray[i] = buffer[extractIndex];
+    		if (floatBuffer != null) {
+    			for (int c = 0; c < nbCh; c++) {
+    				extractedArray[i][c] = floatBuffer[extractIndex][c];
+    			}
+    		} else {
+    			extractedArray[i] = buffer[extractIndex];
+    		}
     	}
 
     	return extractedArray;
@@ -65,7 +125,7 @@ public class CircBuffer {
         for (int c = 0; c < nbCh; c++) {
             for(int i = 0; i < nbSamples; i++) {
                 extractIndex = mod(index - nbSamples + i, bufferLength);
-                extractedArray[c][i] = buffer[extractIndex][c];
+                extractedArray[c][i] = (floatBuffer != null) ? floatBuffer[extractIndex][c] : buffer[extractIndex][c];
             }
         }
 
@@ -81,8 +141,23 @@ public class CircBuffer {
     	pts = 0;
     }
 
+    public boolean isFloat() {
+        return floatBuffer != null;
+    }
+
     public void print() {
-    	System.out.println(Arrays.deepToString(buffer));
+    	System.out.println((floatBuffer != null) ? Arrays.deepToString(floatBuffer) : Arrays.deepToString(buffer));
+    }
+
+    private void store(double[] newData) {
+        // Store a sample at the current index, by reference or as floats
+        if (floatBuffer != null) {
+            for (int c = 0; c < nbCh; c++) {
+                floatBuffer[index][c] = (float) newData[c];
+            }
+        } else {
+            buffer[index] = newData;
+        }
     }
 
     private int mod(int a, int b) {
@@ -3,32 +3,64 @@ import java.util.Arrays; // For printing arrays when debugging
 public class CircBuffer2D {
     // This class implements a circular (or ring) buffer to hold
     // the most recent values of a 2D time series efficiently.
+    //
+    // Epochs [nbCh,nbBins] are copied into a single contiguous array, so the
+    // caller can safely reuse its array between updates. Epoch (buffer slot)
+    // i, channel c, bin n is stored at
+    //      i*epochStride + c*nbBins + n,   with epochStride = nbCh*nbBins
+    // Read-only access without copying is available through getData() and
+    // epochView().
+    //
+    // If `useFloat` is true, epochs are stored in a float array instead,
+    // halving memory and cache bandwidth. Values are converted back to
+    // double when read.
 	
 	protected int bufferLength;
 	protected int nbCh;
     protected int nbBins;
+    protected int epochStride;
 
 	protected int index;
 	protected int pts;
 
-	protected double[][][] buffer;
+	protected double[] buffer;
+	protected float[] floatBuffer;
 
 	public CircBuffer2D(int n, int m, int l) {
+        this(n, m, l, false);
+    }
+
+	public CircBuffer2D(int n, int m, int l, boolean useFloat) {
 
         bufferLength = n;
         nbCh = m;
         nbBins = l;
+        epochStride = nbCh*nbBins;
 
         index = 0;
         pts = 0;
 
-        buffer = new double[bufferLength][nbCh][nbBins];
+        if (useFloat) {
+            floatBuffer = new float[bufferLength*epochStride];
+        } else {
+            buffer = new double[bufferLength*epochStride];
+        }
 
     }
 
     public void update(double[][] newData) {
 
-            buffer[index] = newData;
+            int offset = index*epochStride;
+            for (int c = 0; c < nbCh; c++) {
+                if (floatBuffer != null) {
+                    for (int n = 0; n < nbBins; n++) {
+                        floatBuffer[offset + n] = (float) newData[c][n];
+                    }
+                } else {
+                    System.arraycopy(newData[c], 0, buffer, offset, nbBins);
+                }
+                offset += nbBins;
+            }
             index++;
             pts++;
             if (index >= bufferLength) { 
@@ -44,12 +76,48 @@ public class CircBuffer2D {
 
     	for(int i = 0; i < nbSamples; i++) {
     		extractIndex = mod(index - nbSamples + i, bufferLength);
-    		extractedArray[i] = buffer[extractIndex];
+    		int offset = extractIndex*epochStride;
+    		for (int c = 0; c < nbCh; c++) {
+    			if (floatBuffer != null) {
+    				for (int n = 0; n < nbBins; n++) {
+    					extractedArray[i][c][n] = floatBuffer[offset + n];
+    				}
+    			} else {
+    				System.arraycopy(buffer, offset, extractedArray[i][c], 0, nbBins);
+    			}
+    			offset += nbBins;
+    		}
     	}
 
     	return extractedArray;
     }
 
+    public int epochView(int age) {
+        // Offset in getData() (or getFloatData()) of the epoch written `age`
+        // updates ago (0 is the most recent). Channel c, bin n of that epoch
+        // is at offset + c*getChannelStride() + n.
+
+        return mod(index - 1 - age, bufferLength)*epochStride;
+    }
+
+    public double[] getData() {
+        // Backing array (null in float mode). Must not be modified.
+        return buffer;
+    }
+
+    public float[] getFloatData() {
+        // Backing array in float mode (null otherwise). Must not be modified.
+        return floatBuffer;
+    }
+
+    public int getEpochStride() {
+        return epochStride;
+    }
+
+    public int getChannelStride() {
+        return nbBins;
+    }
+
     public int getPts() {
         return pts;
     }
@@ -58,8 +126,12 @@ public class CircBuffer2D {
     	pts = 0;
     }
 
+    public boolean isFloat() {
+        return floatBuffer != null;
+    }
+
     public void print() {
-    	System.out.println(Arrays.deepToString(buffer));
+    	System.out.println(Arrays.deepToString(extract(bufferLength)));
     }
 
     private int mod(int a, int b) {
@@ -90,6 +162,11 @@ public class CircBuffer2D {
     	double[][][] testExtractedArray = testBuffer.extract(4);
     	System.out.println(Arrays.deepToString(testExtractedArray));
 
+    	// Read the most recent epoch without copying
+    	int offset = testBuffer.epochView(0);
+    	double[] data = testBuffer.getData();
+    	System.out.println(data[offset + 3*testBuffer.getChannelStride() + 2]);
+
     	// Reset number of collected points
     	testBuffer.resetPts();
 
@@ -0,0 +1,305 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays; // For printing arrays when debugging
+
+public class CircBufferConcurrent extends CircBufferConcurrentPad2 {
+    // This class implements a lock-free single-producer/single-consumer
+    // circular buffer. One thread (e.g. Bluetooth acquisition) calls
+    // update() while another (e.g. FFT processing) calls getPts(),
+    // resetPts() and extractTransposed(), without any locking.
+    //
+    // Storage is channel-major like CircBufferFlat. Two sequence counters
+    // (number of samples ever written) are shared between the threads:
+    //  claimed: incremented by the producer *before* it overwrites a slot
+    //  published: incremented with release semantics *after* the write
+    // The consumer reads `published` with acquire semantics, copies the
+    // window, and then checks `claimed` to make sure the producer did not
+    // overwrite any part of the window while it was being copied
+    // (seqlock-style validation). If it did, the copy is retried.
+    //
+    // Overruns (the consumer falling more than `bufferLength` samples behind
+    // the producer between two calls to resetPts()) are counted and can be
+    // read with getNbOverruns(). Copies retried because the producer
+    // overwrote the window are counted separately (getNbRetries()).
+    //
+    // The two counters are declared in the superclasses at the end of this
+    // file, between padding classes, so that the producer writing them does
+    // not invalidate the cache line of the consumer's own fields (and
+    // `claimed` and `published` do not share one). HotSpot lays out the
+    // fields of a superclass before those of its subclasses, but the JVM
+    // does not guarantee any layout, so this is a best effort.
+
+    private static final VarHandle CLAIMED;
+    private static final VarHandle PUBLISHED;
+    private static final int MAX_RETRIES = 8;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CLAIMED = lookup.findVarHandle(CircBufferConcurrentClaimed.class, "claimed", long.class);
+            PUBLISHED = lookup.findVarHandle(CircBufferConcurrentPublished.class, "published", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int bufferLength;
+    private final int nbCh;
+    private final double[] buffer;
+
+    // Consumer-owned state
+    private long consumed;
+    private long nbOverruns;
+    private long nbRetries;
+
+    public CircBufferConcurrent(int n, int m) {
+        bufferLength = n;
+        nbCh = m;
+        buffer = new double[nbCh*bufferLength];
+    }
+
+    // ------------------------------------------------------------------------
+    // Producer side
+
+    public void update(double[] newData) {
+        // Copy one multichannel sample into the buffer. Must only be called
+        // from the producer thread.
+
+        if (newData.length != nbCh) {
+            System.out.println("All channels must be updated at once.");
+            return;
+        }
+
+        long seq = (long) CLAIMED.getOpaque(this);
+        int index = (int) (seq % bufferLength);
+
+        CLAIMED.setOpaque(this, seq + 1);
+        VarHandle.storeStoreFence(); // claim is visible before the slot is overwritten
+
+        for (int c = 0; c < nbCh; c++) {
+            buffer[c*bufferLength + index] = newData[c];
+        }
+
+        PUBLISHED.setRelease(this, seq + 1);
+    }
+
+    public void updateBlock(double[][] block, int offset, int len) {
+        // Copy `len` samples of `block` [nbSamples, nbCh], starting at
+        // sample `offset`, and publish them all at once. Must only be called
+        // from the producer thread.
+        //
+        // If `len` is larger than the buffer, only the last `bufferLength`
+        // samples are written (all `len` count as published), as with len
+        // calls to update().
+
+        if (!CircBuffer.isValidBlock(block, offset, len, nbCh)) {
+            return;
+        }
+
+        long seq = (long) CLAIMED.getOpaque(this);
+        int skipped = Math.max(0, len - bufferLength);
+        int index = (int) ((seq + skipped) % bufferLength);
+        int nbStored = len - skipped;
+        int firstRun = Math.min(nbStored, bufferLength - index);
+        offset += skipped;
+
+        CLAIMED.setOpaque(this, seq + len);
+        VarHandle.storeStoreFence();
+
+        for (int c = 0; c < nbCh; c++) {
+            int chOffset = c*bufferLength;
+            for (int i = 0; i < firstRun; i++) {
+                buffer[chOffset + index + i] = block[offset + i][c];
+            }
+            for (int i = firstRun; i < nbStored; i++) {
+                buffer[chOffset + i - firstRun] = block[offset + i][c];
+            }
+        }
+
+        PUBLISHED.setRelease(this, seq + len);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consumer side
+
+    public int getPts() {
+        // Number of samples published since the last call to resetPts()
+        long pts = (long) PUBLISHED.getAcquire(this) - consumed;
+        return (int) Math.min(pts, Integer.MAX_VALUE);
+    }
+
+    public void resetPts() {
+        // Mark all published samples as consumed, counting an overrun if
+        // more than `bufferLength` samples arrived since the last reset.
+        long end = (long) PUBLISHED.getAcquire(this);
+        if (end - consumed > bufferLength) {
+            nbOverruns++;
+        }
+        consumed = end;
+    }
+
+    public double[][] extractTransposed(int nbSamples) {
+        // Return an array containing the last `nbSamples` published samples.
+        //
+        // The shape of the returned array is [nbCh, nbSamples].
+
+        double[][] extractedArray = new double[nbCh][nbSamples];
+        extractTransposedInto(extractedArray);
+        return extractedArray;
+    }
+
+    public long extractTransposedInto(double[][] dst) {
+        // Copy a consistent window of the last `dst[0].length` published
+        // samples into `dst`, of shape [nbCh, nbSamples].
+        //
+        // Returns the sequence number (total number of samples written) of
+        // the end of the extracted window. If fewer than `nbSamples` samples
+        // were ever written, the missing oldest samples are zeros.
+
+        int nbSamples = dst[0].length;
+        if (nbSamples > bufferLength) {
+            throw new IllegalArgumentException("Cannot extract " + nbSamples + " samples from a buffer of length " + bufferLength + ".");
+        }
+
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long end = (long) PUBLISHED.getAcquire(this);
+            copyWindow(end, nbSamples, dst);
+
+            VarHandle.loadLoadFence(); // window reads complete before checking for overwrites
+            long claimedNow = (long) CLAIMED.getOpaque(this);
+
+            // The window covers samples [end-nbSamples, end); the producer has
+            // started overwriting samples up to claimedNow-1-bufferLength.
+            if (claimedNow - bufferLength <= end - nbSamples) {
+                return end;
+            }
+            nbRetries++;
+        }
+
+        throw new IllegalStateException("Producer kept overwriting the window; consumer is too slow.");
+    }
+
+    public long getNbOverruns() {
+        return nbOverruns;
+    }
+
+    public long getNbRetries() {
+        // Number of window copies retried in extractTransposedInto()
+        return nbRetries;
+    }
+
+    public int getNbCh() {
+        return nbCh;
+    }
+
+    public int getBufferLength() {
+        return bufferLength;
+    }
+
+    public void print() {
+        System.out.println(Arrays.toString(buffer));
+    }
+
+    private void copyWindow(long end, int nbSamples, double[][] dst) {
+        // Copy samples [end-nbSamples, end) with at most two runs per channel
+
+        int missing = (int) Math.max(0, nbSamples - end);
+        int available = nbSamples - missing;
+        int start = (int) ((end - available) % bufferLength);
+        int firstRun = Math.min(available, bufferLength - start);
+
+        for (int c = 0; c < nbCh; c++) {
+            int offset = c*bufferLength;
+            Arrays.fill(dst[c], 0, missing, 0.);
+            System.arraycopy(buffer, offset + start, dst[c], missing, firstRun);
+            if (firstRun < available) {
+                System.arraycopy(buffer, offset, dst[c], missing + firstRun, available - firstRun);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Producer writes a ramp (same value on every channel); the consumer
+        // checks that every extracted window is a contiguous ramp.
+        final int testNbCh = 4;
+        final int testBufferLength = 2048;
+        final int windowLength = 220;
+        final int nbUpdates = 5000000;
+        final CircBufferConcurrent testBuffer = new CircBufferConcurrent(testBufferLength, testNbCh);
+
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                double[] sample = new double[testNbCh];
+                for (int i = 1; i <= nbUpdates; i++) {
+                    Arrays.fill(sample, i);
+                    testBuffer.update(sample);
+                }
+            }
+        });
+        producer.start();
+
+        double[][] window = new double[testNbCh][windowLength];
+        int nbWindows = 0;
+        int nbInconsistent = 0;
+        int nbFailed = 0;
+        while (producer.isAlive() || testBuffer.getPts() >= 22) {
+            if (testBuffer.getPts() >= 22) {
+                testBuffer.resetPts();
+                long end;
+                try {
+                    end = testBuffer.extractTransposedInto(window);
+                } catch (IllegalStateException e) {
+                    if (nbFailed++ == 0) {
+                        System.out.println("Extraction failed: " + e.getMessage());
+                    }
+                    continue;
+                }
+                nbWindows++;
+                for (int c = 0; c < testNbCh; c++) {
+                    for (int i = 0; i < windowLength; i++) {
+                        double expected = Math.max(0, end - windowLength + 1 + i);
+                        if (window[c][i] != expected) {
+                            nbInconsistent++;
+                            c = testNbCh;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        producer.join();
+
+        System.out.println("Windows extracted: " + nbWindows);
+        System.out.println("Inconsistent windows: " + nbInconsistent);
+        System.out.println("Failed extractions: " + nbFailed);
+        System.out.println("Overruns: " + testBuffer.getNbOverruns() + ", retries: " + testBuffer.getNbRetries());
+
+    }
+
+}
+
+// Padding superclasses of CircBufferConcurrent (see above): 64 bytes before,
+// between and after the two counters
+
+abstract class CircBufferConcurrentPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class CircBufferConcurrentClaimed extends CircBufferConcurrentPad0 {
+    // Incremented by the producer before it overwrites a slot
+    volatile long claimed;
+}
+
+abstract class CircBufferConcurrentPad1 extends CircBufferConcurrentClaimed {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class CircBufferConcurrentPublished extends CircBufferConcurrentPad1 {
+    // Incremented by the producer after the write
+    volatile long published;
+}
+
+abstract class CircBufferConcurrentPad2 extends CircBufferConcurrentPublished {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
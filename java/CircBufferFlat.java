@@ -0,0 +1,210 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+public class CircBufferFlat {
+    // This class implements a circular (or ring) buffer to hold
+    // the most recent values of a 1D time series, like CircBuffer, but
+    // backed by a single contiguous channel-major array.
+    //
+    // New samples are copied into the buffer (the caller can safely reuse
+    // its array), and the extractInto() methods write into caller-owned
+    // arrays so that steady-state processing does not allocate.
+    //
+    // Channel c occupies buffer[c*bufferLength, (c+1)*bufferLength).
+
+    private int bufferLength;
+    private int nbCh;
+    private int index;
+    private int pts;
+    private double[] buffer;
+
+    public CircBufferFlat(int n, int m) {
+        bufferLength = n;
+        nbCh = m;
+        index = 0;
+        pts = 0;
+        buffer = new double[nbCh*bufferLength];
+    }
+
+    public void update(double[] newData) {
+
+        if (newData.length == nbCh) {
+            for (int c = 0; c < nbCh; c++) {
+                buffer[c*bufferLength + index] = newData[c];
+            }
+            index++;
+            pts++;
+            if (index >= bufferLength) { index = 0;}
+        } else {
+            System.out.println("All channels must be updated at once.");
+        }
+    }
+
+    public void updateBlock(double[][] block, int offset, int len) {
+        // Copy `len` samples of `block` [nbSamples, nbCh], starting at
+        // sample `offset`, into the buffer in one call.
+        //
+        // Each channel is written in (at most) two contiguous runs, before
+        // and after the wrap-around point. If `len` is larger than the
+        // buffer, only the last `bufferLength` samples are kept, as with
+        // len calls to update().
+
+        if (!CircBuffer.isValidBlock(block, offset, len, nbCh)) {
+            return;
+        }
+        if (len > bufferLength) { // only the most recent samples would be kept
+            offset += len - bufferLength;
+            pts += len - bufferLength;
+            index = (index + len - bufferLength) % bufferLength;
+            len = bufferLength;
+        }
+
+        int firstRun = Math.min(len, bufferLength - index);
+
+        for (int c = 0; c < nbCh; c++) {
+            int chOffset = c*bufferLength;
+            for (int i = 0; i < firstRun; i++) {
+                buffer[chOffset + index + i] = block[offset + i][c];
+            }
+            for (int i = firstRun; i < len; i++) {
+                buffer[chOffset + i - firstRun] = block[offset + i][c];
+            }
+        }
+
+        index += len;
+        if (index >= bufferLength) { index -= bufferLength;}
+        pts += len;
+    }
+
+    public double[][] extract(int nbSamples) {
+        // Return an array containing the last `nbSamples` collected in
+        // the circular buffer.
+        //
+        // The shape of the returned array is [nbSamples, nbCh].
+
+        double[][] extractedArray = new double[nbSamples][nbCh];
+        extractInto(extractedArray);
+        return extractedArray;
+    }
+
+    public double[][] extractTransposed(int nbSamples) {
+        // Return an array containing the last `nbSamples` collected in
+        // the circular buffer.
+        //
+        // The shape of the returned array is [nbCh, nbSamples].
+
+        double[][] extractedArray = new double[nbCh][nbSamples];
+        extractTransposedInto(extractedArray);
+        return extractedArray;
+    }
+
+    public void extractInto(double[][] dst) {
+        // Copy the last `dst.length` samples into `dst`, of shape
+        // [nbSamples, nbCh].
+        //
+        // The window is split into (at most) two contiguous runs, before
+        // and after the wrap-around point, so no modulo is needed per element.
+
+        int nbSamples = dst.length;
+        checkLength(nbSamples);
+
+        int start = startIndex(nbSamples);
+        int firstRun = Math.min(nbSamples, bufferLength - start);
+
+        for (int c = 0; c < nbCh; c++) {
+            int offset = c*bufferLength;
+            for (int i = 0; i < firstRun; i++) {
+                dst[i][c] = buffer[offset + start + i];
+            }
+            for (int i = firstRun; i < nbSamples; i++) {
+                dst[i][c] = buffer[offset + i - firstRun];
+            }
+        }
+    }
+
+    public void extractTransposedInto(double[][] dst) {
+        // Copy the last `dst[0].length` samples into `dst`, of shape
+        // [nbCh, nbSamples].
+        //
+        // Each channel is contiguous in the backing array, so this is at
+        // most two System.arraycopy() calls per channel.
+
+        int nbSamples = dst[0].length;
+        checkLength(nbSamples);
+
+        int start = startIndex(nbSamples);
+        int firstRun = Math.min(nbSamples, bufferLength - start);
+
+        for (int c = 0; c < nbCh; c++) {
+            int offset = c*bufferLength;
+            System.arraycopy(buffer, offset + start, dst[c], 0, firstRun);
+            if (firstRun < nbSamples) {
+                System.arraycopy(buffer, offset, dst[c], firstRun, nbSamples - firstRun);
+            }
+        }
+    }
+
+    public int getPts() {
+        return pts;
+    }
+
+    public void resetPts() {
+        pts = 0;
+    }
+
+    public int getNbCh() {
+        return nbCh;
+    }
+
+    public int getBufferLength() {
+        return bufferLength;
+    }
+
+    public void print() {
+        System.out.println(Arrays.toString(buffer));
+    }
+
+    private int startIndex(int nbSamples) {
+        // Position of the oldest sample of a window of `nbSamples`
+        int start = index - nbSamples;
+        return (start < 0) ? start + bufferLength : start;
+    }
+
+    private void checkLength(int nbSamples) {
+        if (nbSamples > bufferLength) {
+            throw new IllegalArgumentException("Cannot extract " + nbSamples + " samples from a buffer of length " + bufferLength + ".");
+        }
+    }
+
+    public static void main(String[] args ) {
+
+        // Create buffer of 220 samples by 4 channels
+        int testNbCh = 4;
+        int testBufferLength = 220;
+        CircBufferFlat testBuffer = new CircBufferFlat(testBufferLength,testNbCh);
+
+        // Update buffer with fake data, reusing the same array
+        double[] fakeSamples = new double[testNbCh];
+        int nbUpdates = 230;
+        for(int i = 0; i < nbUpdates; i++){
+            for (int c = 0; c < testNbCh; c++) {
+                fakeSamples[c] = 1000*c + i;
+            }
+            testBuffer.update(fakeSamples);
+        }
+
+        // Extract latest 12 samples from buffer
+        double[][] testExtractedArray = new double[12][testNbCh];
+        testBuffer.extractInto(testExtractedArray);
+        System.out.println(Arrays.deepToString(testExtractedArray));
+
+        // Extract latest 12 samples from buffer, but transposed
+        double[][] testExtractedArray2 = new double[testNbCh][12];
+        testBuffer.extractTransposedInto(testExtractedArray2);
+        System.out.println(Arrays.deepToString(testExtractedArray2));
+
+        // Reset number of collected points
+        testBuffer.resetPts();
+
+    }
+
+}
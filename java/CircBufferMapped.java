@@ -0,0 +1,297 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays; // For printing arrays when debugging
+
+public class CircBufferMapped implements Closeable {
+    // This class keeps the whole history of a multichannel time series
+    // (e.g. an overnight recording) in a memory-mapped file, while exposing
+    // the same update()/extract() API as CircBuffer for the most recent
+    // samples.
+    //
+    // The most recent `bufferLength` samples are also kept in a heap
+    // CircBufferFlat so that the live processing path never touches the
+    // file. The full session can be read back with extract(from, to), or
+    // without copying with extractView(from, to).
+    //
+    // The file is written sample-major ([nbSamples, nbCh], native byte
+    // order) and mapped in fixed-size segments of `segmentLength` samples,
+    // so the Java heap only holds the hot window regardless of session length.
+    // Only the segment being written and the last segment read stay mapped;
+    // other segments are mapped read-only when they are read, and unmapped
+    // once their buffers (and the views of extractView()) are garbage
+    // collected, so the address space used does not grow with the session
+    // either. A segment is forced to the file when writing moves on to the
+    // next one, and the last one on close(), so a session interrupted by a
+    // power loss keeps at least its completed segments.
+
+    private static final int DEFAULT_SEGMENT_LENGTH = 1 << 16;
+
+    private int bufferLength;
+    private int nbCh;
+    private int segmentLength;
+    private long nbWritten;
+
+    private CircBufferFlat hotBuffer;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer writeMapping;
+    private DoubleBuffer writeSegment;
+    private int writeSegmentIndex;
+    private DoubleBuffer lastReadSegment;
+    private int lastReadSegmentIndex;
+
+    public CircBufferMapped(File f, int n, int m) throws IOException {
+        this(f, n, m, DEFAULT_SEGMENT_LENGTH);
+    }
+
+    public CircBufferMapped(File f, int n, int m, int segmentSamples) throws IOException {
+        // Sample positions within a segment are ints, and a segment is one
+        // mapping, so a segment must hold at most Integer.MAX_VALUE bytes
+        if (segmentSamples <= 0 || (long) segmentSamples*m*Double.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segments of " + segmentSamples + " samples x " + m
+                + " channels do not fit in one mapping.");
+        }
+
+        bufferLength = n;
+        nbCh = m;
+        segmentLength = segmentSamples;
+        nbWritten = 0;
+
+        hotBuffer = new CircBufferFlat(bufferLength, nbCh);
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        writeSegmentIndex = -1;
+        lastReadSegmentIndex = -1;
+    }
+
+    public void update(double[] newData) {
+
+        if (newData.length == nbCh) {
+            DoubleBuffer segment = segmentFor(nbWritten);
+            int pos = (int) (nbWritten % segmentLength)*nbCh;
+            for (int c = 0; c < nbCh; c++) {
+                segment.put(pos + c, newData[c]);
+            }
+            nbWritten++;
+            hotBuffer.update(newData);
+        } else {
+            System.out.println("All channels must be updated at once.");
+        }
+    }
+
+    public void updateBlock(double[][] block, int offset, int len) {
+        // Write `len` samples of `block` [nbSamples, nbCh], starting at
+        // sample `offset`.
+
+        if (!CircBuffer.isValidBlock(block, offset, len, nbCh)) {
+            return;
+        }
+
+        for (int i = 0; i < len; i++) {
+            double[] sample = block[offset + i];
+            DoubleBuffer segment = segmentFor(nbWritten + i);
+            int pos = (int) ((nbWritten + i) % segmentLength)*nbCh;
+            for (int c = 0; c < nbCh; c++) {
+                segment.put(pos + c, sample[c]);
+            }
+        }
+        nbWritten += len;
+        hotBuffer.updateBlock(block, offset, len);
+    }
+
+    public double[][] extract(int nbSamples) {
+        // Return the last `nbSamples` samples [nbSamples, nbCh], from memory.
+        return hotBuffer.extract(nbSamples);
+    }
+
+    public double[][] extractTransposed(int nbSamples) {
+        // Return the last `nbSamples` samples [nbCh, nbSamples], from memory.
+        return hotBuffer.extractTransposed(nbSamples);
+    }
+
+    public void extractTransposedInto(double[][] dst) {
+        hotBuffer.extractTransposedInto(dst);
+    }
+
+    public double[][] extract(long from, long to) {
+        // Return samples [from, to) of the session, of shape [to-from, nbCh].
+
+        checkRange(from, to);
+        double[][] extractedArray = new double[(int) (to - from)][nbCh];
+
+        DoubleBuffer segment = null;
+        for (long i = from; i < to; i++) {
+            if (segment == null || i % segmentLength == 0) {
+                segment = readSegment((int) (i / segmentLength));
+            }
+            int pos = (int) (i % segmentLength)*nbCh;
+            double[] row = extractedArray[(int) (i - from)];
+            for (int c = 0; c < nbCh; c++) {
+                row[c] = segment.get(pos + c);
+            }
+        }
+
+        return extractedArray;
+    }
+
+    public DoubleBuffer extractView(long from, long to) {
+        // Return a read-only view on samples [from, to) of the session,
+        // without copying. The view is sample-major: sample i, channel c is
+        // at index i*nbCh + c.
+        //
+        // Returns null if the range spans more than one mapped segment; use
+        // extract(from, to) in that case.
+
+        checkRange(from, to);
+        int seg = (int) (from / segmentLength);
+        if (to > from && (to - 1) / segmentLength != seg) {
+            return null;
+        }
+
+        DoubleBuffer view = readSegment(seg).asReadOnlyBuffer();
+        int start = (int) (from % segmentLength)*nbCh;
+        view.position(start);
+        view.limit(start + (int) (to - from)*nbCh);
+        return view.slice();
+    }
+
+    public long getNbWritten() {
+        return nbWritten;
+    }
+
+    public int getPts() {
+        return hotBuffer.getPts();
+    }
+
+    public void resetPts() {
+        hotBuffer.resetPts();
+    }
+
+    public void close() throws IOException {
+        // Flush the file and release it; views returned by extractView()
+        // stay readable until they are garbage collected
+        if (!channel.isOpen()) {
+            return;
+        }
+        // FileChannel.force() does not cover writes made through a mapping
+        if (writeMapping != null) {
+            writeMapping.force();
+        }
+        writeMapping = null;
+        writeSegment = null;
+        writeSegmentIndex = -1;
+        lastReadSegment = null;
+        lastReadSegmentIndex = -1;
+        channel.force(false);
+        channel.close();
+        file.close();
+    }
+
+    public void print() {
+        hotBuffer.print();
+    }
+
+    private DoubleBuffer segmentFor(long sample) {
+        // Return the mapped segment holding `sample` for writing, mapping the
+        // next one (and growing the file) when the previous one is full. The
+        // previous segment is forced to the file and no longer referenced
+        // from here.
+
+        int seg = (int) (sample / segmentLength);
+        if (seg != writeSegmentIndex) {
+            if (writeMapping != null) {
+                writeMapping.force();
+            }
+            writeMapping = map(seg, FileChannel.MapMode.READ_WRITE);
+            writeSegment = writeMapping.asDoubleBuffer();
+            writeSegmentIndex = seg;
+        }
+        return writeSegment;
+    }
+
+    private DoubleBuffer readSegment(int seg) {
+        // Return segment `seg` for reading: the segment being written, or a
+        // read-only mapping of an older one, kept until another older
+        // segment is read
+        if (seg == writeSegmentIndex) {
+            return writeSegment;
+        }
+        if (seg != lastReadSegmentIndex) {
+            lastReadSegment = map(seg, FileChannel.MapMode.READ_ONLY).asDoubleBuffer();
+            lastReadSegmentIndex = seg;
+        }
+        return lastReadSegment;
+    }
+
+    private MappedByteBuffer map(int seg, FileChannel.MapMode mode) {
+        long segmentBytes = (long) segmentLength*nbCh*Double.BYTES;
+        try {
+            MappedByteBuffer mapping = channel.map(mode, seg*segmentBytes, segmentBytes);
+            mapping.order(ByteOrder.nativeOrder());
+            return mapping;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map segment " + seg + ".", e);
+        }
+    }
+
+    private void checkRange(long from, long to) {
+        if (from < 0 || to > nbWritten || from > to) {
+            throw new IllegalArgumentException("Range [" + from + ", " + to + ") is outside of [0, " + nbWritten + ").");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        // Create a session buffer with small segments to exercise segment crossing
+        int testNbCh = 4;
+        int testBufferLength = 220;
+        File testFile = File.createTempFile("session", ".bin");
+        testFile.deleteOnExit();
+        CircBufferMapped testBuffer = new CircBufferMapped(testFile, testBufferLength, testNbCh, 1000);
+
+        // Rows with the wrong number of channels are rejected before anything
+        // is written
+        testBuffer.updateBlock(new double[][]{new double[testNbCh], new double[testNbCh - 1]}, 0, 2);
+        System.out.println("Samples written after a malformed block: " + testBuffer.getNbWritten());
+
+        // Write a few seconds of fake data
+        double[] fakeSamples = new double[testNbCh];
+        int nbUpdates = 2500;
+        for (int i = 0; i < nbUpdates; i++) {
+            for (int c = 0; c < testNbCh; c++) {
+                fakeSamples[c] = 1000*c + i;
+            }
+            testBuffer.update(fakeSamples);
+        }
+
+        // Latest samples come from memory
+        System.out.println(Arrays.deepToString(testBuffer.extract(3)));
+
+        // Older samples come from the file, across a segment boundary
+        System.out.println(Arrays.deepToString(testBuffer.extract(998, 1002)));
+
+        // Zero-copy view within a segment
+        DoubleBuffer view = testBuffer.extractView(10, 12);
+        System.out.println(view.get(0) + " " + view.get(testNbCh + 3));
+        System.out.println(testBuffer.extractView(998, 1002));
+
+        testBuffer.close();
+        testBuffer.close();
+
+        try {
+            new CircBufferMapped(testFile, testBufferLength, 64, 1 << 22);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+public class CompareBlockExecutionTime {
+	// Compare sample-by-sample and packet-by-packet (block) processing
+	// through Filter and CircBufferFlat, for packets of 12 samples x 4 channels.
+
+	public static void main(String[] args ) {
+
+		int nbPackets = 2000000;
+		int packetLength = 12;
+		int nbCh = 4;
+		int bufferLength = 220;
+		double fs = 256.;
+		long startTime;
+		long endTime;
+
+		Filter bpFilt = new Filter(fs, "bandpass", 5, 2, 36);
+
+		// Fake packet
+		double[][] packet = Filter.generateFakeSignal(packetLength/fs, nbCh, fs);
+		double[][] filtPacket = new double[packetLength][nbCh];
+
+
+		/* SAMPLE BY SAMPLE */
+
+		CircBufferFlat rawBuffer1 = new CircBufferFlat(bufferLength,nbCh);
+		CircBufferFlat filtBuffer1 = new CircBufferFlat(bufferLength,nbCh);
+		double[][] z = new double[nbCh][bpFilt.getNB()];
+		double[] filtSample = new double[nbCh];
+
+		startTime = System.currentTimeMillis();
+		for (int p = 0; p < nbPackets; p++) {
+			for (int i = 0; i < packetLength; i++) {
+				rawBuffer1.update(packet[i]);
+				z = bpFilt.transform(packet[i], z);
+				for (int c = 0; c < nbCh; c++) {
+					filtSample[c] = z[c][z[0].length - 1];
+				}
+				filtBuffer1.update(filtSample);
+			}
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 1 (per sample): " + (endTime-startTime) + "ms");
+
+
+		/* BLOCK */
+
+		CircBufferFlat rawBuffer2 = new CircBufferFlat(bufferLength,nbCh);
+		CircBufferFlat filtBuffer2 = new CircBufferFlat(bufferLength,nbCh);
+		FilterState state = new FilterState(bpFilt, nbCh);
+
+		startTime = System.currentTimeMillis();
+		for (int p = 0; p < nbPackets; p++) {
+			rawBuffer2.updateBlock(packet, 0, packetLength);
+			bpFilt.transformBlock(packet, filtPacket, state);
+			filtBuffer2.updateBlock(filtPacket, 0, packetLength);
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 2 (block): " + (endTime-startTime) + "ms");
+
+
+		/* AGREEMENT */
+
+		double[][] filtWindow1 = filtBuffer1.extractTransposed(bufferLength);
+		double[][] filtWindow2 = filtBuffer2.extractTransposed(bufferLength);
+		double maxDiff = 0;
+		for (int c = 0; c < nbCh; c++) {
+			for (int i = 0; i < bufferLength; i++) {
+				maxDiff = Math.max(maxDiff, Math.abs(filtWindow1[c][i] - filtWindow2[c][i]));
+			}
+		}
+		System.out.println("Max abs difference: " + maxDiff);
+
+
+		/* BLOCKS LONGER THAN THE BUFFERS */
+
+		// Every buffer keeps the last bufferLength samples, as with
+		// sample-by-sample updates; an empty block at the end of the array
+		// is a no-op
+		double[][] longBlock = Filter.generateFakeSignal(2.5*bufferLength/fs, nbCh, fs);
+		CircBufferFlat reference = new CircBufferFlat(bufferLength, nbCh);
+		for (double[] sample: longBlock) {
+			reference.update(sample);
+		}
+		double[][] expected = reference.extractTransposed(bufferLength);
+
+		CircBuffer circBuffer = new CircBuffer(bufferLength, nbCh);
+		CircBufferFlat flatBuffer = new CircBufferFlat(bufferLength, nbCh);
+		CircBufferConcurrent concurrentBuffer = new CircBufferConcurrent(bufferLength, nbCh);
+		circBuffer.updateBlock(longBlock, 0, longBlock.length);
+		flatBuffer.updateBlock(longBlock, 0, longBlock.length);
+		concurrentBuffer.updateBlock(longBlock, 0, longBlock.length);
+		circBuffer.updateBlock(longBlock, longBlock.length, 0);
+		flatBuffer.updateBlock(longBlock, longBlock.length, 0);
+		concurrentBuffer.updateBlock(longBlock, longBlock.length, 0);
+
+		double[][][] windows = {circBuffer.extractTransposed(bufferLength), flatBuffer.extractTransposed(bufferLength),
+			concurrentBuffer.extractTransposed(bufferLength)};
+		maxDiff = 0;
+		for (double[][] window: windows) {
+			for (int c = 0; c < nbCh; c++) {
+				for (int i = 0; i < bufferLength; i++) {
+					maxDiff = Math.max(maxDiff, Math.abs(window[c][i] - expected[c][i]));
+				}
+			}
+		}
+		System.out.println("Block of " + longBlock.length + " samples, max abs difference with per-sample updates: " + maxDiff);
+
+		try {
+			flatBuffer.updateBlock(longBlock, longBlock.length - 2, 3);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.Random;
+
+public class CompareBufferLayout {
+	// Compare the cost of averaging PSD epochs stored in a jagged
+	// double[bufferLength][nbCh][nbBins] array (rows stored by reference,
+	// scattered on the heap as with the former CircBuffer2D) and in
+	// CircBuffer2D's flat strided array, for a high-density montage.
+	//
+	// Cache misses are not measured directly; the full-rescan timings are
+	// the proxy (same arithmetic, different memory layout).
+
+	public static void main(String[] args ) {
+
+		int nbRepeats = 20000;
+		int bufferLength = 20;
+		int nbCh = 64;
+		int nbBins = 129;
+		long startTime;
+		long endTime;
+		Random rng = new Random(0);
+
+		// Jagged storage: each epoch row is a separately allocated array,
+		// interleaved with other allocations like in a live pipeline
+		double[][][] jagged = new double[bufferLength][nbCh][];
+		Object[] garbage = new Object[bufferLength*nbCh];
+		for (int i = 0; i < bufferLength; i++) {
+			for (int c = 0; c < nbCh; c++) {
+				jagged[i][c] = new double[nbBins];
+				garbage[i*nbCh + c] = new double[rng.nextInt(512)];
+				for (int n = 0; n < nbBins; n++) {
+					jagged[i][c][n] = rng.nextGaussian();
+				}
+			}
+		}
+
+		// Flat storage
+		PSDBuffer psdBuffer = new PSDBuffer(bufferLength, nbCh, nbBins);
+		for (int i = 0; i < bufferLength; i++) {
+			psdBuffer.update(jagged[i]);
+		}
+		double[] flat = psdBuffer.getData();
+		int epochStride = psdBuffer.getEpochStride();
+
+		double[][] mean1 = new double[nbCh][nbBins];
+		double[][] mean2 = new double[nbCh][nbBins];
+
+
+		/* FULL RESCAN, JAGGED */
+
+		startTime = System.currentTimeMillis();
+		for (int r = 0; r < nbRepeats; r++) {
+			for (int c = 0; c < nbCh; c++) {
+				Arrays.fill(mean1[c], 0.);
+			}
+			for (int i = 0; i < bufferLength; i++) {
+				for (int c = 0; c < nbCh; c++) {
+					for (int n = 0; n < nbBins; n++) {
+						mean1[c][n] += jagged[i][c][n];
+					}
+				}
+			}
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 1 (rescan, jagged): " + (endTime-startTime) + "ms");
+
+
+		/* FULL RESCAN, FLAT */
+
+		startTime = System.currentTimeMillis();
+		for (int r = 0; r < nbRepeats; r++) {
+			for (int c = 0; c < nbCh; c++) {
+				Arrays.fill(mean2[c], 0.);
+			}
+			for (int i = 0; i < bufferLength; i++) {
+				int offset = i*epochStride;
+				for (int c = 0; c < nbCh; c++, offset += nbBins) {
+					double[] meanCh = mean2[c];
+					for (int n = 0; n < nbBins; n++) {
+						meanCh[n] += flat[offset + n];
+					}
+				}
+			}
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 2 (rescan, flat): " + (endTime-startTime) + "ms");
+
+
+		/* PSDBuffer UPDATE + RUNNING MEAN */
+
+		startTime = System.currentTimeMillis();
+		for (int r = 0; r < nbRepeats; r++) {
+			psdBuffer.update(jagged[r % bufferLength]);
+			psdBuffer.mean();
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 3 (PSDBuffer update + mean): " + (endTime-startTime) + "ms");
+
+		// Both layouts must give the same sums
+		double maxDiff = 0;
+		for (int c = 0; c < nbCh; c++) {
+			for (int n = 0; n < nbBins; n++) {
+				maxDiff = Math.max(maxDiff, Math.abs(mean1[c][n] - mean2[c][n]));
+			}
+		}
+		System.out.println("Max abs difference: " + maxDiff + " (" + garbage.length + " filler arrays)");
+
+	}
+}
@@ -0,0 +1,91 @@
+public class CompareEJMLExecutionTime {
+	// Compare Filter.transformBlock (one channel at a time) and the
+	// FilterEJML block engine (Direct Form I, one row of channels per step)
+	// for packets of 12 samples and 4 to 512 channels,
+	// print the channel count from which the block engine is faster, and the
+	// engine that FilterEJML(Filter, int, int) picks by itself.
+
+	public static void main(String[] args ) {
+
+		double fs = 256.;
+		int blockLength = 12;
+		Filter bpFilt = new Filter(fs, "bandpass", 5, 2, 36);
+
+		// Both engines agree up to rounding (Direct Form I vs Transposed
+		// Direct Form II)
+		int nbCh = 64;
+		double[][] block = Filter.generateFakeSignal(blockLength/fs, nbCh, fs);
+		double[][] out1 = new double[blockLength][nbCh];
+		double[][] out2 = new double[blockLength][nbCh];
+		FilterState state = new FilterState(bpFilt, nbCh);
+		FilterEJML blockFilt = new FilterEJML(bpFilt, nbCh, blockLength, true);
+		double maxDiff = 0;
+		for (int p = 0; p < 1000; p++) {
+			bpFilt.transformBlock(block, out1, state);
+			blockFilt.transformBlock(block, out2);
+			for (int n = 0; n < blockLength; n++) {
+				for (int c = 0; c < nbCh; c++) {
+					maxDiff = Math.max(maxDiff, Math.abs(out1[n][c] - out2[n][c]));
+				}
+			}
+		}
+		System.out.println("Max abs difference between engines: " + maxDiff);
+
+		int crossover = measureCrossover(bpFilt, blockLength,
+			new int[]{4, 8, 16, 32, 64, 128, 256, 512}, 20000000);
+		System.out.println("FilterEJML block engine is faster from " + crossover + " channels");
+
+		// The default constructor times both engines on its first blocks
+		for (int nbChannels: new int[]{4, 512}) {
+			FilterEJML autoFilt = new FilterEJML(bpFilt, nbChannels, blockLength);
+			double[][] autoBlock = Filter.generateFakeSignal(blockLength/fs, nbChannels, fs);
+			while (!autoFilt.isCalibrated()) {
+				autoFilt.transformBlock(autoBlock, autoBlock);
+			}
+			System.out.println(nbChannels + " channels: block engine picked " + autoFilt.usesBlockEngine());
+		}
+
+	}
+
+	public static int measureCrossover(Filter filter, int blockSamples, int[] nbChList, int nbChannelSamples) {
+		// Time both engines on a fake signal for each channel count, over
+		// about `nbChannelSamples` channel-samples each, and return the
+		// smallest channel count from which the block engine is faster
+		// (Integer.MAX_VALUE if it never is).
+
+		int crossover = Integer.MAX_VALUE;
+		boolean scalarWon = false;
+		for (int i = nbChList.length - 1; i >= 0; i--) {
+			int nbChannels = nbChList[i];
+			double[][] block = Filter.generateFakeSignal(blockSamples/256., nbChannels, 256.);
+			double[][] filtBlock = new double[blockSamples][nbChannels];
+			int nbBlocks = Math.max(1, nbChannelSamples/(nbChannels*blockSamples));
+
+			FilterEJML scalarFilt = new FilterEJML(filter, nbChannels, blockSamples, false);
+			FilterEJML blockFilt = new FilterEJML(filter, nbChannels, blockSamples, true);
+			long[] times = new long[2];
+			for (int run = 0; run < 3; run++) { // first runs warm up the JIT
+				long startTime = System.nanoTime();
+				for (int p = 0; p < nbBlocks; p++) {
+					scalarFilt.transformBlock(block, filtBlock);
+				}
+				long midTime = System.nanoTime();
+				for (int p = 0; p < nbBlocks; p++) {
+					blockFilt.transformBlock(block, filtBlock);
+				}
+				times[0] = midTime - startTime;
+				times[1] = System.nanoTime() - midTime;
+			}
+
+			System.out.println(nbChannels + " channels: Filter.transformBlock " + times[0]/nbBlocks
+				+ " ns/block, FilterEJML.transformBlock " + times[1]/nbBlocks + " ns/block");
+			if (times[1] < times[0] && !scalarWon) {
+				crossover = nbChannels;
+			} else {
+				scalarWon = true;
+			}
+		}
+		return crossover;
+
+	}
+}
@@ -0,0 +1,119 @@
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+public class CompareFFTExecutionTime {
+	// Per-call cost of FFT.computeLogPSD, and bytes allocated per call, for
+	// a 256-sample window (no padding) and a 220-sample window zero-padded
+	// to 256 points.
+	//
+	// Then, for 4 to 256 channels, cost of a step (log-PSD of all channels)
+	// with a loop over channels, and with the batched computeLogPSD run
+	// sequentially, in parallel (parallel only with more than one core), and
+	// sequentially with pairs of channels packed in one complex FFT.
+	//
+	// Last, cost of creating an FFT object (window and FFT plan come from
+	// WindowFunctions and FFTPlanCache after the first one).
+
+	public static void main(String[] args ) {
+
+		double fs = 256.;
+		int nbCalls = 1000000;
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		for (int[] lengths: new int[][]{{256, 256}, {220, 256}}) {
+
+			FFT fft = new FFT(lengths[0], lengths[1], fs);
+			double[] x = Filter.generateFakeSignal(lengths[0]/fs, 1, fs)[0];
+			double[] window = new double[lengths[0]];
+			for (int i = 0; i < window.length; i++) {
+				window[i] = Math.sin(0.3*i) + 2.;
+			}
+			double[] logpower = new double[fft.getNbFftPoints()];
+
+			for (int run = 0; run < 2; run++) { // first run warms up the JIT
+				long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+				long startTime = System.nanoTime();
+				for (int i = 0; i < nbCalls; i++) {
+					fft.computeLogPSD(window, logpower);
+				}
+				long endTime = System.nanoTime();
+				long endBytes = threadBean.getThreadAllocatedBytes(threadId);
+
+				if (run == 1) {
+					System.out.println("Input " + lengths[0] + ", FFT " + lengths[1] + ": " + (endTime-startTime)/nbCalls
+						+ " ns/call, " + (endBytes-startBytes)/nbCalls + " bytes/call");
+				}
+			}
+		}
+
+		int fftLength = 256;
+		FFT fft = new FFT(fftLength, fftLength, fs);
+		for (int nbCh: new int[]{4, 16, 64, 256}) {
+
+			double[][] windows = new double[nbCh][fftLength];
+			for (int c = 0; c < nbCh; c++) {
+				for (int i = 0; i < fftLength; i++) {
+					windows[c][i] = Math.sin(0.3*i + c) + 2.;
+				}
+			}
+			double[][] logpower = new double[nbCh][fft.getNbFftPoints()];
+			int nbSteps = 200000/nbCh;
+			long[] times = new long[4];
+
+			for (int run = 0; run < 2; run++) { // first run warms up the JIT
+				long startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					for (int c = 0; c < nbCh; c++) {
+						fft.computeLogPSD(windows[c], logpower[c]);
+					}
+				}
+				times[0] = System.nanoTime() - startTime;
+
+				fft.setParallelThreshold(Integer.MAX_VALUE);
+				startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					fft.computeLogPSD(windows, logpower);
+				}
+				times[1] = System.nanoTime() - startTime;
+
+				fft.setParallelThreshold(0);
+				startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					fft.computeLogPSD(windows, logpower);
+				}
+				times[2] = System.nanoTime() - startTime;
+
+				fft.setParallelThreshold(Integer.MAX_VALUE);
+				fft.setPairChannels(true);
+				startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					fft.computeLogPSD(windows, logpower);
+				}
+				times[3] = System.nanoTime() - startTime;
+				fft.setPairChannels(false);
+			}
+
+			System.out.println(nbCh + " channels: loop " + times[0]/nbSteps + " ns/step, batched "
+				+ times[1]/nbSteps + " ns/step, batched parallel " + times[2]/nbSteps + " ns/step, batched paired "
+				+ times[3]/nbSteps + " ns/step");
+		}
+
+		int nbObjects = 20000;
+		FFT[] ffts = new FFT[nbObjects];
+		for (int run = 0; run < 2; run++) { // first run warms up the JIT
+			long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+			long startTime = System.nanoTime();
+			for (int i = 0; i < nbObjects; i++) {
+				ffts[i] = new FFT(220, 256, fs);
+			}
+			long endTime = System.nanoTime();
+			long endBytes = threadBean.getThreadAllocatedBytes(threadId);
+			if (run == 1) {
+				System.out.println("new FFT(220, 256): " + (endTime-startTime)/nbObjects + " ns, "
+					+ (endBytes-startBytes)/nbObjects + " bytes");
+			}
+		}
+
+	}
+}
@@ -0,0 +1,59 @@
+public class CompareFIRExecutionTime {
+	// Compare direct-form FIR filtering with FilterFIR (FFT overlap-save)
+	// for 32 channels and tap counts from 16 to 1024, in millions of
+	// channel-samples per second.
+
+	public static void main(String[] args ) {
+
+		double fs = 256.;
+		int nbCh = 32;
+		int[] nbTapsList = new int[]{17, 33, 65, 129, 257, 513, 1025};
+		int nbSamples = (int)(300*fs);
+		int blockLength = 12;
+		long startTime;
+		long endTime;
+
+		double[][] fakeSignal = Filter.generateFakeSignal(blockLength/fs, nbCh, fs);
+		double[][] filtBlock = new double[blockLength][nbCh];
+
+		for (int nbTaps: nbTapsList) {
+
+			double[] taps = FilterFIR.design(fs, "bandpass", nbTaps, 2, 36);
+
+			// Direct form, with the last nbTaps samples of each channel in a circular history
+			double[][] history = new double[nbCh][nbTaps];
+			int head = 0;
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < nbSamples; i++) {
+				double[] x = fakeSignal[i % blockLength];
+				for (int c = 0; c < nbCh; c++) {
+					double[] h = history[c];
+					h[head] = x[c];
+					double y = 0;
+					for (int k = 0, j = head; k < nbTaps; k++) {
+						y += taps[k]*h[j];
+						j = (j == 0) ? nbTaps - 1 : j - 1;
+					}
+					filtBlock[i % blockLength][c] = y;
+				}
+				head = (head + 1) % nbTaps;
+			}
+			endTime = System.currentTimeMillis();
+			double rate1 = (double)nbSamples*nbCh/(endTime - startTime)/1000;
+
+			// Overlap-save
+			FilterFIR firFilt = new FilterFIR(taps, nbCh);
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < nbSamples; i += blockLength) {
+				firFilt.transformBlock(fakeSignal, filtBlock);
+			}
+			endTime = System.currentTimeMillis();
+			double rate2 = (double)nbSamples*nbCh/(endTime - startTime)/1000;
+
+			System.out.println(nbTaps + " taps: direct form " + String.format("%.1f", rate1) + " MS/s, overlap-save "
+				+ String.format("%.1f", rate2) + " MS/s (FFT length " + firFilt.getFftLength() + ")");
+
+		}
+
+	}
+}
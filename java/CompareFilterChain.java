@@ -0,0 +1,72 @@
+public class CompareFilterChain {
+	// Compare a notch -> bandpass -> highpass chain applied as three
+	// separate filters (one pass and one state array each) and as a single
+	// FilterChain pass, on packets of 12 samples x 32 channels.
+
+	public static void main(String[] args ) {
+
+		double fs = 256.;
+		int nbCh = 32;
+		int packetLength = 12;
+		int nbPackets = 500000;
+		long startTime;
+		long endTime;
+
+		FilterSpec notch = new FilterSpec(fs, "bandstop", 2, 58, 62);
+		FilterSpec bandpass = new FilterSpec(fs, "bandpass", 4, 1, 40);
+		FilterSpec highpass = new FilterSpec(fs, "highpass", 2, 0.5, 0);
+
+		double[][] packet = Filter.generateFakeSignal(packetLength/fs, nbCh, fs);
+		double[][] filtPacket = new double[packetLength][nbCh];
+
+		for (int run = 0; run < 2; run++) { // first run warms up the JIT
+
+			// 1. Three direct-form Filters, sample by sample
+			Filter[] filters = new Filter[]{new Filter(notch), new Filter(bandpass), new Filter(highpass)};
+			double[][][] z = new double[3][][];
+			for (int s = 0; s < 3; s++) {
+				z[s] = new double[nbCh][filters[s].getNB()];
+			}
+			startTime = System.currentTimeMillis();
+			for (int p = 0; p < nbPackets; p++) {
+				for (int n = 0; n < packetLength; n++) {
+					double[] x = packet[n];
+					for (int s = 0; s < 3; s++) {
+						z[s] = filters[s].transform(x, z[s]);
+						x = Filter.extractFilteredSamples(z[s]);
+					}
+					filtPacket[n] = x;
+				}
+			}
+			endTime = System.currentTimeMillis();
+			System.out.println("Total execution time 1 (3 Filters): " + (endTime-startTime) + "ms");
+
+			// 2. Three FilterSOS, one block pass each
+			FilterSOS[] stages = new FilterSOS[]{new FilterSOS(notch), new FilterSOS(bandpass), new FilterSOS(highpass)};
+			FilterState[] states = new FilterState[3];
+			for (int s = 0; s < 3; s++) {
+				states[s] = new FilterState(nbCh, 2*stages[s].getNbSections());
+			}
+			filtPacket = new double[packetLength][nbCh];
+			startTime = System.currentTimeMillis();
+			for (int p = 0; p < nbPackets; p++) {
+				stages[0].transformBlock(packet, filtPacket, states[0]);
+				stages[1].transformBlock(filtPacket, filtPacket, states[1]);
+				stages[2].transformBlock(filtPacket, filtPacket, states[2]);
+			}
+			endTime = System.currentTimeMillis();
+			System.out.println("Total execution time 2 (3 FilterSOS passes): " + (endTime-startTime) + "ms");
+
+			// 3. FilterChain, a single pass
+			FilterChain chain = new FilterChain(nbCh, notch, bandpass, highpass);
+			startTime = System.currentTimeMillis();
+			for (int p = 0; p < nbPackets; p++) {
+				chain.transformBlock(packet, filtPacket);
+			}
+			endTime = System.currentTimeMillis();
+			System.out.println("Total execution time 3 (FilterChain): " + (endTime-startTime) + "ms");
+
+		}
+
+	}
+}
@@ -0,0 +1,84 @@
+public class CompareFilterSOS {
+	// Compare the direct-form Filter and the biquad cascade FilterSOS for
+	// the usual 5th-order 2-36 Hz bandpass: execution time on a long fake
+	// signal, and agreement on the data/BandPass_*_Raw_EEG1.csv recordings.
+
+	public static void main(String[] args ) {
+
+		double fs = 256.;
+		int nbCh = 4;
+		long startTime;
+		long endTime;
+
+		Filter filt1 = new Filter(fs, "bandpass", 5, 2, 36);
+		FilterSOS filt2 = new FilterSOS(fs, "bandpass", 5, 2, 36);
+
+
+		/* EXECUTION TIME */
+
+		double[][] fakeSignal = Filter.generateFakeSignal(600, nbCh, fs);
+		double[][] filtSignal = new double[fakeSignal.length][nbCh];
+		int nbRepeats = 50;
+
+		// Filter's transform()
+		double[][] z = new double[nbCh][filt1.getNB()];
+		startTime = System.currentTimeMillis();
+		for (int r = 0; r < nbRepeats; r++) {
+			for (int i = 0; i < fakeSignal.length; i++) {
+				z = filt1.transform(fakeSignal[i], z);
+			}
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 1 (Filter.transform): " + (endTime-startTime) + "ms");
+
+		// FilterSOS's transform()
+		FilterState state = new FilterState(nbCh, 2*filt2.getNbSections());
+		startTime = System.currentTimeMillis();
+		for (int r = 0; r < nbRepeats; r++) {
+			for (int i = 0; i < fakeSignal.length; i++) {
+				filt2.transform(fakeSignal[i], filtSignal[i], state);
+			}
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 2 (FilterSOS.transform): " + (endTime-startTime) + "ms");
+
+		// FilterSOS's transformBlock()
+		state.reset();
+		startTime = System.currentTimeMillis();
+		for (int r = 0; r < nbRepeats; r++) {
+			filt2.transformBlock(fakeSignal, filtSignal, state);
+		}
+		endTime = System.currentTimeMillis();
+		System.out.println("Total execution time 3 (FilterSOS.transformBlock): " + (endTime-startTime) + "ms");
+
+
+		/* AGREEMENT ON RECORDINGS */
+
+		String[] filenames = new String[]{
+			"../data/BandPass_FullSampled_Raw_EEG1.csv",
+			"../data/BandPass_Downsampled_Raw_EEG1.csv"};
+
+		for (String filename: filenames) {
+			double[][] signal = TestFloatStorage.getRealSignal(filename);
+			int nbChRec = signal[0].length;
+
+			double[][] zRec = new double[nbChRec][filt1.getNB()];
+			FilterState stateRec = new FilterState(nbChRec, 2*filt2.getNbSections());
+			double[] y = new double[nbChRec];
+
+			double maxDiff = 0;
+			double maxAbs = 0;
+			for (int i = 0; i < signal.length; i++) {
+				zRec = filt1.transform(signal[i], zRec);
+				filt2.transform(signal[i], y, stateRec);
+				for (int c = 0; c < nbChRec; c++) {
+					double y1 = zRec[c][zRec[c].length - 1];
+					maxDiff = Math.max(maxDiff, Math.abs(y[c] - y1));
+					maxAbs = Math.max(maxAbs, Math.abs(y1));
+				}
+			}
+			System.out.println(filename + ": max abs difference " + maxDiff + " (max abs output " + maxAbs + ")");
+		}
+
+	}
+}
@@ -0,0 +1,49 @@
+public class CompareMultichannelFilter {
+	// Compare Filter.transform (one channel at a time) and
+	// FilterMultichannel.transform (all channels per step, channel-minor
+	// state) for 4, 32 and 256 channels.
+
+	public static void main(String[] args ) {
+
+		double fs = 256.;
+		int[] nbChList = new int[]{4, 32, 256};
+		int nbSamplesTotal = 100000000; // samples x channels per run
+		long startTime;
+		long endTime;
+
+		Filter bpFilt = new Filter(fs, "bandpass", 5, 2, 36);
+
+		for (int nbCh: nbChList) {
+
+			int nbSamples = nbSamplesTotal/nbCh;
+			double[][] fakeSignal = Filter.generateFakeSignal(1, nbCh, fs);
+			double[] y = new double[nbCh];
+
+			// Warm up both paths so that they are JIT-compiled
+			double[][] z = new double[nbCh][bpFilt.getNB()];
+			FilterMultichannel mcFilt = new FilterMultichannel(bpFilt, nbCh);
+			for (int i = 0; i < 20000; i++) {
+				z = bpFilt.transform(fakeSignal[i % fakeSignal.length], z);
+				mcFilt.transform(fakeSignal[i % fakeSignal.length], y);
+			}
+
+			// Filter's transform()
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < nbSamples; i++) {
+				z = bpFilt.transform(fakeSignal[i % fakeSignal.length], z);
+			}
+			endTime = System.currentTimeMillis();
+			System.out.println(nbCh + " channels, total execution time 1 (Filter.transform): " + (endTime-startTime) + "ms");
+
+			// FilterMultichannel's transform()
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < nbSamples; i++) {
+				mcFilt.transform(fakeSignal[i % fakeSignal.length], y);
+			}
+			endTime = System.currentTimeMillis();
+			System.out.println(nbCh + " channels, total execution time 2 (FilterMultichannel.transform): " + (endTime-startTime) + "ms");
+
+		}
+
+	}
+}
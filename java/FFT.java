@@ -1,7 +1,8 @@
-import org.jtransforms.fft.DoubleFFT_1D;
 import java.lang.Math; // For log10
 // import java.lang.arraycopy; 
 import java.util.Arrays; // For printing arrays when debugging
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class FFT {
 // This class uses the DoubleFFT_1D object from JTransforms to 
@@ -25,15 +26,21 @@ public class FFT {
 	private boolean even;
 	private boolean zeroPad = false;
 
-	private double[] real;
-	private double[] imag;
 	private double[] logpower;
 	private double[] Y;
 	private double[] f;
 	private double[] hammingWin;
 
 	private double fs;
-	private DoubleFFT_1D fft_1D;
+
+	// Scratch for computeLogPSD(double[][], double[][]) on worker threads
+	// comes from FFTPlanCache.scratch()
+	private int parallelThreshold = 1 << 13; // e.g. 32 channels x 256 points
+
+	// Paired-channel mode: scratch [2*fftLength] for two channels packed in
+	// one complex FFT (allocated when the mode is first enabled)
+	private boolean pairChannels = false;
+	private double[] Z;
 
 
 	public FFT(int inputLength, int fftLength, double samplingFrequency) {
@@ -59,34 +66,113 @@ public class FFT {
 
 		// Initialize arrays to hold internal values
 		Y = new double[n];
-		real = new double[nbFftPoints];
-		imag = new double[nbFftPoints];
 		logpower = new double[nbFftPoints];
 
-		// Initialize FFT transform
-		fft_1D = new DoubleFFT_1D(n);
-
 		// Define frequency bins
 		f = new double[nbFftPoints];
 		for (int i = 0; i < nbFftPoints; i++) {
 			f[i] = fs*i/n;
 		}
 
-		// Initialize Hamming window
-		hammingWin = hamming(l);
+		// Hamming window, shared with all FFT objects of the same input
+		// length; the FFT plan is taken from FFTPlanCache by the thread that
+		// computes the transform
+		hammingWin = WindowFunctions.get("hamming", l);
 
 	}
 
 	public double[] computeLogPSD(double[] x) {
-		// Compute log10(PSD) of x
-		// TODO: Improve efficiency by merging for loops
+		// Compute log10(PSD) of x into an internal array, which is
+		// overwritten by the next call (use computeLogPSD(x, out) to keep
+		// one result per channel)
+
+		return computeLogPSD(x, logpower);
+
+	}
+
+	public double[] computeLogPSD(double[] x, double[] out) {
+		// Compute log10(PSD) of x into `out` [nbFftPoints] and return it.
+		// Allocates nothing.
+
+		return computeLogPSD(x, out, Y);
+
+	}
+
+	public double[][] computeLogPSD(double[][] xChMajor, double[][] out) {
+		// Compute log10(PSD) of every channel of `xChMajor` [nbCh,inputLength]
+		// into `out` [nbCh,nbFftPoints] and return it.
+		//
+		// If nbCh*fftLength is at least the parallel threshold and there is
+		// more than one core, channels are split across the common ForkJoin
+		// pool, each worker thread using its own FFT plan and scratch array
+		// from FFTPlanCache; otherwise they are processed in turn
+		// on the calling thread.
+		//
+		// In paired-channel mode (see setPairChannels()), channels 2i and
+		// 2i+1 go through the same complex FFT (the last one alone if nbCh is
+		// odd).
+
+		int nbCh = xChMajor.length;
+		boolean parallel = (long)nbCh*n >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1;
+		if (pairChannels) {
+			int nbPairs = nbCh/2;
+			if (parallel) {
+				IntStream.range(0, nbPairs).parallel().forEach(p -> {
+					computeLogPSD(xChMajor[2*p], xChMajor[2*p + 1], out[2*p], out[2*p + 1], FFTPlanCache.scratch(2*n));
+				});
+			} else {
+				for (int p = 0; p < nbPairs; p++) {
+					computeLogPSD(xChMajor[2*p], xChMajor[2*p + 1], out[2*p], out[2*p + 1], Z);
+				}
+			}
+			if (nbCh % 2 == 1) {
+				computeLogPSD(xChMajor[nbCh - 1], out[nbCh - 1], Y);
+			}
+		} else if (parallel) {
+			IntStream.range(0, nbCh).parallel().forEach(c -> {
+				computeLogPSD(xChMajor[c], out[c], FFTPlanCache.scratch(n));
+			});
+		} else {
+			for (int c = 0; c < nbCh; c++) {
+				computeLogPSD(xChMajor[c], out[c], Y);
+			}
+		}
+		return out;
+
+	}
+
+	public void setPairChannels(boolean pair) {
+		// Enable or disable the paired-channel mode of
+		// computeLogPSD(double[][], double[][]): two real channels a and b
+		// are packed as z = a + j*b in one complexForward transform, and
+		// their spectra separated with the conjugate symmetry of real
+		// signals,
+		//		A[k] = (Z[k] + conj(Z[n-k]))/2,  B[k] = (Z[k] - conj(Z[n-k]))/(2j)
+		// which halves the number of transforms. The result equals the
+		// per-channel one up to rounding, relative to the power of both
+		// channels in each bin (a bin much weaker in one channel than in the
+		// other loses some digits).
+		pairChannels = pair;
+		if (pair && Z == null) {
+			Z = new double[2*n];
+		}
+	}
+
+	public void setParallelThreshold(int nbPoints) {
+		// Smallest nbCh*fftLength for which computeLogPSD(double[][],
+		// double[][]) runs in parallel (Integer.MAX_VALUE to never do it)
+		parallelThreshold = nbPoints;
+	}
+
+	private double[] computeLogPSD(double[] x, double[] out, double[] Y) {
+		// `Y` is the scratch array to use: the field, or that of a worker
+		// thread
 
 		if (x.length != l) {
 			throw new IllegalArgumentException("Input has " + x.length + " elements instead of " + l + ".");
 		}
-
-		if (zeroPad) {
-			Y = new double[n]; // Re-initialize to have zeros at the end
+		if (out.length != nbFftPoints) {
+			throw new IllegalArgumentException("Output has " + out.length + " elements instead of " + nbFftPoints + ".");
 		}
 
 		// Compute mean of the window
@@ -96,56 +182,118 @@ public class FFT {
 		}
 		winMean /= l;
 
-		// De-mean and apply Hamming window
-		for (int i = 0; i < Math.min(l,n); i++) {
+		// De-mean and apply Hamming window; the FFT overwrites Y, so the
+		// zero-padding is written again every time
+		int m = Math.min(l,n);
+		for (int i = 0; i < m; i++) {
 			Y[i] = hammingWin[i]*(x[i] - winMean);
 		}
+		if (zeroPad) {
+			Arrays.fill(Y, m, n, 0.);
+		}
 
 		// Compute DFT
-		fft_1D.realForward(Y);
-
-		// Get real and imaginary parts
-		for (int i = 0; i < nbFftPoints-1; i++) {
-			real[i] = Y[2*i];
-			imag[i] = Y[2*i + 1];
+		FFTPlanCache.get(n).realForward(Y);
+
+		// Compute log-power (log squared complex magnitude) straight from the
+		// packed output of JTransforms: Y[2i], Y[2i+1] are the real and
+		// imaginary parts of bin i, except for Y[1] which holds the last
+		// point (real part if n is even, imaginary part if n is odd)
+		out[0] = Math.log10(Y[0]*Y[0]);
+		for (int i = 1; i < nbFftPoints-1; i++) {
+			out[i] = Math.log10(Y[2*i]*Y[2*i] + Y[2*i + 1]*Y[2*i + 1]);
 		}
-		imag[0] = 0;
-
-		// Get first and/or last points depending on length of FFT (Specific to JTransforms library)
 		if (even) {
-			real[nbFftPoints-1] = Y[1];
+			out[nbFftPoints-1] = Math.log10(Y[1]*Y[1]);
 		} else {
-			imag[nbFftPoints-1] = Y[1];
-			real[nbFftPoints-1] = Y[n-1];
-		}
-
-		// Compute log-power
-		for (int i = 0; i < nbFftPoints; i++) {
-			logpower[i] = Math.log10(real[i]*real[i] + imag[i]*imag[i]); // log squared complex magnitude
+			out[nbFftPoints-1] = Math.log10(Y[n-1]*Y[n-1] + Y[1]*Y[1]);
 		}
 
-		return logpower;
+		return out;
 
 	}
- 
-	private double[] hamming(int L) {
-		// Compute Hamming window coefficients.
-		//
-		// See [http://www.mathworks.com/help/signal/ref/hamming.html]
 
-		double[] w = new double[L];
-		for (int n = 0; n < L; n++) {
-			w[n] = 0.54 - 0.46*Math.cos(2*Math.PI*n/(L-1));
+	private void computeLogPSD(double[] xa, double[] xb, double[] outA, double[] outB, double[] Z) {
+		// log10(PSD) of xa and xb into outA and outB, with one complex FFT;
+		// `Z` [2*fftLength] is the scratch array to use
+
+		if (xa.length != l || xb.length != l) {
+			throw new IllegalArgumentException("Inputs have " + xa.length + " and " + xb.length + " elements instead of " + l + ".");
+		}
+		if (outA.length != nbFftPoints || outB.length != nbFftPoints) {
+			throw new IllegalArgumentException("Outputs have " + outA.length + " and " + outB.length + " elements instead of " + nbFftPoints + ".");
+		}
+
+		double meanA = 0;
+		double meanB = 0;
+		for (int i = 0; i < l; i++) {
+			meanA += xa[i];
+			meanB += xb[i];
+		}
+		meanA /= l;
+		meanB /= l;
+
+		// Interleaved real (channel a) and imaginary (channel b) parts
+		int m = Math.min(l,n);
+		for (int i = 0; i < m; i++) {
+			Z[2*i] = hammingWin[i]*(xa[i] - meanA);
+			Z[2*i + 1] = hammingWin[i]*(xb[i] - meanB);
+		}
+		if (zeroPad) {
+			Arrays.fill(Z, 2*m, 2*n, 0.);
+		}
+
+		FFTPlanCache.get(n).complexForward(Z);
+
+		// |A[k]|^2 and |B[k]|^2 from Z[k] and Z[n-k]; as in the real path,
+		// the last point is bin n/2 if n is even
+		outA[0] = Math.log10(Z[0]*Z[0]);
+		outB[0] = Math.log10(Z[1]*Z[1]);
+		int last = even ? n/2 : nbFftPoints-1;
+		for (int k = 1; k < nbFftPoints; k++) {
+			int bin = (k == nbFftPoints-1) ? last : k;
+			double zr = Z[2*bin];
+			double zi = Z[2*bin + 1];
+			double wr = Z[2*(n - bin)];
+			double wi = Z[2*(n - bin) + 1];
+			outA[k] = Math.log10(0.25*((zr + wr)*(zr + wr) + (zi - wi)*(zi - wi)));
+			outB[k] = Math.log10(0.25*((zi + wi)*(zi + wi) + (zr - wr)*(zr - wr)));
 		}
 
-		return w;
-		
 	}
 
 	public double[] getFreqBins() {
 		return f;
 	}
 
+	public int getNbFftPoints() {
+		return nbFftPoints;
+	}
+
+	public static void packedPower(double[] Y, int n, double[] scale, double[] out, boolean add) {
+		// Scaled power scale[k]*|X[k]|^2 of bins k = 0..n/2 into `out`
+		// [n/2+1] (added to it if `add`), from the packed output `Y` of
+		// JTransforms' realForward of length n:
+		//		Y[0] = Re X[0]
+		//		Y[2k], Y[2k+1] = Re X[k], Im X[k], for 0 < k < n/2
+		//		Y[1] = Re X[n/2] if n is even
+		//		Y[n-1], Y[1] = Re X[(n-1)/2], Im X[(n-1)/2] if n is odd
+
+		int half = n/2;
+		double p0 = scale[0]*Y[0]*Y[0];
+		out[0] = add ? out[0] + p0 : p0;
+		if (half == 0) {
+			return;
+		}
+		for (int k = 1; k < half; k++) {
+			double p = scale[k]*(Y[2*k]*Y[2*k] + Y[2*k + 1]*Y[2*k + 1]);
+			out[k] = add ? out[k] + p : p;
+		}
+		double last = (n % 2 == 0) ? Y[1]*Y[1] : Y[n - 1]*Y[n - 1] + Y[1]*Y[1];
+		out[half] = add ? out[half] + scale[half]*last : scale[half]*last;
+
+	}
+
 	public static void main(String[] args) {
 
 		int inputLength = 16;
@@ -0,0 +1,108 @@
+import org.jtransforms.fft.DoubleFFT_1D;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Implements per-thread reuse of JTransforms FFT plans and scratch arrays
+public class FFTPlanCache {
+    // Creating a DoubleFFT_1D computes its twiddle factor and bit-reversal
+    // tables (and, for lengths that are not powers of 2, Bluestein
+    // tables), which costs much more than the allocation of the object
+    // that uses it. Here each thread keeps one plan per FFT length, created
+    // the first time that thread asks for it and reused afterwards, so
+    // creating an FFT, WelchPSD or MultitaperPSD costs no table
+    // computation once the length has been seen.
+    //
+    // Plans are thread-confined: a plan returned by get() must only be used
+    // on the calling thread. Classes that may be called from several threads
+    // should call get() where they transform (a ThreadLocal lookup, no
+    // allocation), rather than keep the plan in a field.
+    //
+    // Each thread also keeps one scratch array per length (see scratch()),
+    // for code running on worker threads (e.g. the common ForkJoin pool),
+    // so that these threads hold one array per length whatever the number
+    // of FFT or MultitaperPSD instances that ran on them.
+    //
+    // A thread keeps at most MAX_LENGTHS plans and MAX_LENGTHS scratch
+    // arrays, the least recently used being dropped first; clear() drops
+    // all of them.
+
+    private static final int MAX_LENGTHS = 8;
+
+    private static final ThreadLocal<Plans> PLANS = ThreadLocal.withInitial(Plans::new);
+
+    private static class Plans {
+        // Plans and scratch arrays of one thread; the last ones used are
+        // checked first, so that the usual case (one length per thread)
+        // does not box the length
+        Map<Integer, DoubleFFT_1D> byLength = new LeastRecentlyUsed<>();
+        int lastLength = -1;
+        DoubleFFT_1D lastPlan;
+
+        Map<Integer, double[]> scratchByLength = new LeastRecentlyUsed<>();
+        int lastScratchLength = -1;
+        double[] lastScratch;
+    }
+
+    private static class LeastRecentlyUsed<V> extends LinkedHashMap<Integer, V> {
+        private static final long serialVersionUID = 1L;
+
+        LeastRecentlyUsed() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+            return size() > MAX_LENGTHS;
+        }
+    }
+
+    public static DoubleFFT_1D get(int n) {
+        // FFT plan of length n for the calling thread
+        Plans plans = PLANS.get();
+        if (n != plans.lastLength) {
+            plans.lastPlan = plans.byLength.computeIfAbsent(n, DoubleFFT_1D::new);
+            plans.lastLength = n;
+        }
+        return plans.lastPlan;
+    }
+
+    public static double[] scratch(int length) {
+        // Scratch array of `length` doubles for the calling thread, with
+        // undefined contents. Every caller on the thread gets the same array,
+        // so it must not be kept across a call that may use it too.
+        Plans plans = PLANS.get();
+        if (length != plans.lastScratchLength) {
+            plans.lastScratch = plans.scratchByLength.computeIfAbsent(length, double[]::new);
+            plans.lastScratchLength = length;
+        }
+        return plans.lastScratch;
+    }
+
+    public static void clear() {
+        // Drop the plans and scratch arrays of the calling thread
+        PLANS.remove();
+    }
+
+    public static void main(String[] args) {
+
+        int n = 256;
+        long startTime = System.nanoTime();
+        DoubleFFT_1D first = get(n);
+        long firstTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        DoubleFFT_1D second = get(n);
+        System.out.println("Plan of length " + n + ": " + firstTime + " ns, then " + (System.nanoTime() - startTime)
+            + " ns from the cache (same plan: " + (first == second) + ")");
+
+        // Only the MAX_LENGTHS most recently used lengths are kept
+        for (int length = 100; length < 100 + 2*MAX_LENGTHS; length++) {
+            get(length);
+            scratch(length);
+        }
+        System.out.println("Plans kept: " + PLANS.get().byLength.size() + ", scratch arrays kept: "
+            + PLANS.get().scratchByLength.size() + " (plan of length " + n + " dropped: " + (get(n) != first) + ")");
+
+    }
+
+}
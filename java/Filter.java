@@ -1,9 +1,6 @@
 // package com.eeg_project.components.signal;
 
-import biz.source_code.dsp.filter.FilterPassType;
-import biz.source_code.dsp.filter.FilterCharacteristicsType;
-import biz.source_code.dsp.filter.IirFilterCoefficients;
-import biz.source_code.dsp.filter.IirFilterDesignFisher;
+import org.ejml.simple.SimpleMatrix;
 
 import java.util.Arrays; // For printing arrays when debugging
 
@@ -19,39 +16,24 @@ public class Filter {
     private double[] a;
     private int nB;
     private int nA;
+    private double[] zi;
 
     // ------------------------------------------------------------------------
     // Constructor
 
     public Filter(double samplingFrequency, String inputFilterType, int filterOrder, double fc1, double fc2) {
+        this(new FilterSpec(samplingFrequency, inputFilterType, filterOrder, fc1, fc2));
+    }
 
-        filterType = inputFilterType;
-        FilterCharacteristicsType filterCharacteristicsType = FilterCharacteristicsType.butterworth;
-
-        FilterPassType filterPassType = FilterPassType.lowpass;
-
-        if (filterType.contains("lowpass")) {
-            filterPassType = FilterPassType.lowpass;
-
-        } else if (filterType.contains("highpass")) {
-            filterPassType = FilterPassType.highpass;
-
-        } else if (filterType.contains("bandstop")) {
-            filterPassType = FilterPassType.bandstop;
-        
-        } else if (filterType.contains("bandpass")) {
-            filterPassType = FilterPassType.bandpass;
-
-        } else {
-            throw new RuntimeException("Filter type not recognized.");
-        }  
+    public Filter(FilterSpec spec) {
+        // Coefficients are designed once per spec and shared through FilterRegistry
 
-        double fc1Norm = fc1/samplingFrequency;
-        double fc2Norm = fc2/samplingFrequency;
-        IirFilterCoefficients coeffs = IirFilterDesignFisher.design(filterPassType, filterCharacteristicsType, filterOrder, 0., fc1Norm, fc2Norm);
+        filterType = spec.getPassType().toString();
+        fs = spec.getFs();
 
-        b = coeffs.b;
-        a = coeffs.a;
+        double[][] coeffs = FilterRegistry.get(spec);
+        b = coeffs[0];
+        a = coeffs[1];
 
         nB = b.length;
         nA = a.length;
@@ -108,7 +90,116 @@ public class Filter {
         }
 
         return z;
-        
+
+    }
+
+    public void transformBlock(double[][] in, double[][] out, FilterState state) {
+        // This function implements the Discrete Form II Transposed of
+        // a linear filter for a block (packet) of multichannel samples.
+        //
+        // Args:
+        //  in: the block of samples to be filtered [nbSamples,nbCh]
+        //  out: the filtered samples, written in place [nbSamples,nbCh]
+        //      (can be the same array as `in`)
+        //  state: the internal state of the filter for each channel
+        //
+        // Each channel is processed over the whole block in one tight loop,
+        // with its delay line contiguous in the flat state array.
+
+        int nbSamples = in.length;
+        int nbCh = state.getNbCh();
+        int order = state.getOrder();
+        double[] z = state.getZ();
+
+        if (order != nB - 1) {
+            throw new IllegalArgumentException("State has order " + order + " instead of " + (nB - 1) + ".");
+        }
+
+        for (int c = 0; c < nbCh; c++) {
+            int offset = c*order;
+            for (int n = 0; n < nbSamples; n++) {
+                double x = in[n][c];
+                double y = b[0]*x + z[offset];
+                for (int i = 1; i < order; i++) {
+                    z[offset + i - 1] = b[i]*x + z[offset + i] - a[i]*y;
+                }
+                z[offset + order - 1] = b[order]*x - a[order]*y;
+                out[n][c] = y;
+            }
+        }
+
+    }
+
+    public void initState(double[] x0, double[][] z) {
+        // Set the internal states `z` [nbCh,nbPoints] (as used by
+        // transform()) to the steady state of each channel for a constant
+        // input equal to x0[c], e.g. the first sample of a session, so that
+        // the DC offset of the signal does not make the filter ring.
+
+        double[] unitState = steadyState();
+        double dcGain = getDCGain();
+        for (int c = 0; c < z.length; c++) {
+            for (int k = 0; k < unitState.length; k++) {
+                z[c][k] = unitState[k]*x0[c];
+            }
+            z[c][z[c].length - 1] = dcGain*x0[c];
+        }
+
+    }
+
+    public void initState(double[] x0, FilterState state) {
+        // Same as initState(double[], double[][]) for a FilterState
+
+        double[] unitState = steadyState();
+        double[] z = state.getZ();
+        int order = state.getOrder();
+        for (int c = 0; c < state.getNbCh(); c++) {
+            for (int k = 0; k < order; k++) {
+                z[c*order + k] = unitState[k]*x0[c];
+            }
+        }
+
+    }
+
+    public double[] getSteadyState() {
+        // Copy of the internal state after an infinitely long unit step
+        // (scipy's `lfilter_zi`), [nB-1]
+        return steadyState().clone();
+    }
+
+    private double[] steadyState() {
+        // Shared steady state: it solves (I - A) zi = B, where A is the
+        // transposed companion matrix of `a`; computed on first use.
+
+        if (zi == null) {
+            int order = nB - 1;
+            SimpleMatrix iMinusA = SimpleMatrix.identity(order);
+            SimpleMatrix bVec = new SimpleMatrix(order, 1);
+            for (int k = 0; k < order; k++) {
+                iMinusA.set(k, 0, iMinusA.get(k, 0) + a[k + 1]);
+                if (k + 1 < order) {
+                    iMinusA.set(k, k + 1, -1.);
+                }
+                bVec.set(k, 0, b[k + 1] - a[k + 1]*b[0]);
+            }
+
+            SimpleMatrix solution = iMinusA.solve(bVec);
+            double[] unitState = new double[order];
+            for (int k = 0; k < order; k++) {
+                unitState[k] = solution.get(k, 0);
+            }
+            zi = unitState;
+        }
+        return zi;
+
+    }
+
+    public double getDCGain() {
+        double sumB = 0;
+        double sumA = 0;
+        for (double v: b) sumB += v;
+        for (double v: a) sumA += v;
+        return sumB/sumA;
     }
 
     public static double[] extractFilteredSamples(double[][] z) {
@@ -135,6 +226,17 @@ public class Filter {
         return nA;
     }
 
+    public double[] getB() {
+        // Copy of the numerator coefficients (the filter's own are shared
+        // through FilterRegistry)
+        return b.clone();
+    }
+
+    public double[] getA() {
+        // Copy of the denominator coefficients
+        return a.clone();
+    }
+
     public static double[][] generateFakeSignal(double duration, int nbCh, double fs) {
 
         int nbSamples =  (int)(duration*fs);
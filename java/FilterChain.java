@@ -0,0 +1,182 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+// Implements a chain of filters (e.g. notch -> bandpass -> highpass) applied in a single pass
+public class FilterChain {
+    // Applying several filters one after the other (as in Filter2.main)
+    // reads and writes every sample once per filter, each filter with its
+    // own state array. Here each stage is designed as second-order sections
+    // (FilterSOS) and all sections are concatenated into one cascade, run
+    // in a single pass over each multichannel sample.
+    //
+    // The state is interleaved across channels: for each section s,
+    //      z1[s][c], z2[s][c] = delays of channel c
+    // so that each section is applied to all channels in one loop over
+    // contiguous values with no dependency between iterations (which the
+    // JIT can vectorize), instead of one channel at a time where every
+    // section has to wait for the output of the previous one.
+    //
+    // Args:
+    //  nbCh (int) : number of channels
+    //  specs (FilterSpec...) : stages, in the order they are applied
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private int nbCh;
+    private int nbSections;
+    private FilterSpec[] specs;
+    private double[] sos;
+    private double[][] z1;
+    private double[][] z2;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public FilterChain(int nbChannels, FilterSpec... stageSpecs) {
+
+        nbCh = nbChannels;
+        specs = stageSpecs.clone();
+        FilterSOS[] stages = new FilterSOS[specs.length];
+        for (int i = 0; i < specs.length; i++) {
+            stages[i] = new FilterSOS(specs[i]);
+        }
+        FilterSOS cascade = FilterSOS.cascade(stages);
+        sos = cascade.getSOS();
+        nbSections = cascade.getNbSections();
+
+        z1 = new double[nbSections][nbCh];
+        z2 = new double[nbSections][nbCh];
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public void transform(double[] x, double[] y) {
+        // Filter one multichannel sample `x` [nbCh] into `y` [nbCh]
+        // (can be the same array).
+
+        if (x != y) {
+            System.arraycopy(x, 0, y, 0, nbCh);
+        }
+
+        for (int s = 0, k = 0; s < nbSections; s++, k += 5) {
+            double b0 = sos[k];
+            double b1 = sos[k + 1];
+            double b2 = sos[k + 2];
+            double a1 = sos[k + 3];
+            double a2 = sos[k + 4];
+            double[] zs1 = z1[s];
+            double[] zs2 = z2[s];
+            for (int c = 0; c < nbCh; c++) {
+                double v = y[c];
+                double out = b0*v + zs1[c];
+                zs1[c] = b1*v - a1*out + zs2[c];
+                zs2[c] = b2*v - a2*out;
+                y[c] = out;
+            }
+        }
+
+    }
+
+    public void transformBlock(double[][] in, double[][] out) {
+        // Filter a block of samples `in` [nbSamples,nbCh] into `out`
+        // [nbSamples,nbCh] (can be the same array).
+
+        for (int n = 0; n < in.length; n++) {
+            transform(in[n], out[n]);
+        }
+
+    }
+
+    public void initState(double[] x0) {
+        // Set the state to the steady state of each channel for a constant
+        // input equal to x0[c], e.g. the first sample of a session (see
+        // FilterSOS.initState())
+
+        double[] z = new double[2*nbSections];
+        for (int c = 0; c < nbCh; c++) {
+            FilterSOS.steadyState(sos, x0[c], z, 0);
+            for (int s = 0; s < nbSections; s++) {
+                z1[s][c] = z[2*s];
+                z2[s][c] = z[2*s + 1];
+            }
+        }
+
+    }
+
+    public double[] snapshot() {
+        // Copy of the whole state [2*nbSections*nbCh], e.g. to resume after
+        // a reconnection
+        double[] snapshot = new double[2*nbSections*nbCh];
+        for (int s = 0; s < nbSections; s++) {
+            System.arraycopy(z1[s], 0, snapshot, 2*s*nbCh, nbCh);
+            System.arraycopy(z2[s], 0, snapshot, (2*s + 1)*nbCh, nbCh);
+        }
+        return snapshot;
+    }
+
+    public void restore(double[] snapshot) {
+        // Restore a state saved with snapshot()
+
+        if (snapshot.length != 2*nbSections*nbCh) {
+            throw new IllegalArgumentException("Snapshot has " + snapshot.length + " values instead of " + 2*nbSections*nbCh + ".");
+        }
+        for (int s = 0; s < nbSections; s++) {
+            System.arraycopy(snapshot, 2*s*nbCh, z1[s], 0, nbCh);
+            System.arraycopy(snapshot, (2*s + 1)*nbCh, z2[s], 0, nbCh);
+        }
+
+    }
+
+    public void reset() {
+        for (int s = 0; s < nbSections; s++) {
+            Arrays.fill(z1[s], 0.);
+            Arrays.fill(z2[s], 0.);
+        }
+    }
+
+    public int getNbSections() {
+        return nbSections;
+    }
+
+    public FilterSpec[] getSpecs() {
+        return specs.clone();
+    }
+
+    public static void main(String[] args) {
+
+        double fs = 256.;
+        int nbCh = 4;
+        FilterSpec notch = new FilterSpec(fs, "bandstop", 2, 58, 62);
+        FilterSpec bandpass = new FilterSpec(fs, "bandpass", 4, 1, 40);
+        FilterSpec highpass = new FilterSpec(fs, "highpass", 2, 0.5, 0);
+
+        FilterChain chain = new FilterChain(nbCh, notch, bandpass, highpass);
+        System.out.println("Chain: " + Arrays.toString(chain.getSpecs()) + ", " + chain.getNbSections() + " sections");
+
+        // Compare with the three stages applied one after the other
+        double[][] fakeSignal = Filter.generateFakeSignal(10, nbCh, fs);
+        double[][] chainOut = new double[fakeSignal.length][nbCh];
+        chain.transformBlock(fakeSignal, chainOut);
+
+        double[][] stagesOut = new double[fakeSignal.length][];
+        for (int i = 0; i < fakeSignal.length; i++) {
+            stagesOut[i] = fakeSignal[i].clone();
+        }
+        for (FilterSpec spec: chain.getSpecs()) {
+            FilterSOS stage = new FilterSOS(spec);
+            stage.transformBlock(stagesOut, stagesOut, new FilterState(nbCh, 2*stage.getNbSections()));
+        }
+
+        double maxDiff = 0;
+        for (int i = 0; i < fakeSignal.length; i++) {
+            for (int c = 0; c < nbCh; c++) {
+                maxDiff = Math.max(maxDiff, Math.abs(chainOut[i][c] - stagesOut[i][c]));
+            }
+        }
+        System.out.println("Max abs difference with separate stages: " + maxDiff);
+
+    }
+
+}
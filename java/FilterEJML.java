@@ -1,3 +1,5 @@
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
 import org.ejml.simple.SimpleMatrix;
 import org.apache.commons.lang3.ArrayUtils; // For flipping filter coefficient arrays
 import java.util.Arrays; // For printing arrays when debugging 
@@ -10,11 +12,29 @@ public class FilterEJML {
 	private double[][] coeffA;
 	private SimpleMatrix invCoeffB;
 	private SimpleMatrix invCoeffA;
+	private DenseMatrix64F feedbackA;
+	private DenseMatrix64F result;
 	private int nB;
 	private int nA;
 
-	// TODO: Make filters on the fly
-	
+	// Block engine (see FilterEJML(Filter, int, int))
+	private static final int CALIBRATION_WARMUP_BLOCKS = 64;
+	private static final int CALIBRATION_BLOCKS = 256;
+	private boolean useBlockEngine;
+	private int nbCalibrationBlocks;
+	private long scalarTime;
+	private long blockTime;
+	private double[][] calibrationOut;
+	private Filter scalarFilter;
+	private FilterState scalarState;
+	private int nbCh;
+	private int blockLength;
+	private int order;
+	private double[] b;
+	private double[] a;
+	private DenseMatrix64F inHistory;
+	private DenseMatrix64F outHistory;
+
 	public FilterEJML(double samplingFrequency, int inputFilterType) {
 
 		filterType = inputFilterType;
@@ -23,9 +43,10 @@ public class FilterEJML {
 			coeffB = new double[0][0];
 			coeffA = new double[0][0];
 		} else if (filterType == 1) { // 2-36 Hz bandpass
-			// These coefficients were generated with scipy's `signal.butter` function for fs=220
-			coeffB = new double[][]{{0.0078257670268340635832959861772906151600182056427001953125000000, 0.0000000000000000000000000000000000000000000000000000000000000000, -0.0391288351341703144470329789328388869762420654296875000000000000, 0.0000000000000000000000000000000000000000000000000000000000000000, 0.0782576702683406288940659578656777739524841308593750000000000000, 0.0000000000000000000000000000000000000000000000000000000000000000, -0.0782576702683406288940659578656777739524841308593750000000000000, 0.0000000000000000000000000000000000000000000000000000000000000000, 0.0391288351341703144470329789328388869762420654296875000000000000, 0.0000000000000000000000000000000000000000000000000000000000000000, -0.0078257670268340635832959861772906151600182056427001953125000000}};
-			coeffA = new double[][]{{1.0000000000000000000000000000000000000000000000000000000000000000, -6.6668777100381477751511738460976630449295043945312500000000000000, 20.102068981754037224618514301255345344543457031250000000000000000, -36.3714748273075940687704132869839668273925781250000000000000000000, 44.0208829591519616997175035066902637481689453125000000000000000000, -37.3825112968389277057212893851101398468017578125000000000000000000, 22.5663716670588918589146487647667527198791503906250000000000000000, -9.5478386288525811664840148296207189559936523437500000000000000000, 2.7081430610461021402102232968900352716445922851562500000000000000, -0.4653152296484516781127638296311488375067710876464843750000000000, 0.0365512213384927495130050090210716007277369499206542968750000000}};
+			// For fs=220, FilterRegistry holds coefficients generated with scipy's `signal.butter`
+			double[][] coeffs = FilterRegistry.get(new FilterSpec(samplingFrequency, "bandpass", 5, 2, 36));
+			coeffB = new double[][]{coeffs[0].clone()}; // reversed below
+			coeffA = new double[][]{coeffs[1].clone()};
 		} else {
         	throw new IllegalArgumentException("Filter type not supported");
    		}
@@ -37,13 +58,196 @@ public class FilterEJML {
 
 		nB = invCoeffB.numCols();
 		nA = invCoeffA.numCols();
+		feedbackA = invCoeffA.extractMatrix(0, SimpleMatrix.END, 0, nA-1).getMatrix();
+
+	}
+
+	public FilterEJML(Filter filter, int nbChannels, int blockSamples) {
+		// Filters blocks of `blockSamples` samples x `nbChannels` channels
+		// with whichever of the block engine below and Filter.transformBlock
+		// is faster for this filter, channel count and block length on this
+		// device. Both engines run on the first CALIBRATION_BLOCKS blocks
+		// (output from Filter.transformBlock), and their times after the
+		// first CALIBRATION_WARMUP_BLOCKS decide which one is kept (see
+		// usesBlockEngine()). CompareEJMLExecutionTime puts the crossover at
+		// 16-64 channels for a 10th-order bandpass and 12-sample blocks.
+		//
+		// The engines agree up to rounding only: the block engine is a
+		// Direct Form I and Filter a Transposed Direct Form II (about 2e-7
+		// apart on a fake EEG signal with the 10th-order bandpass).
+		this(filter, nbChannels, blockSamples, true);
+		scalarFilter = filter;
+		scalarState = new FilterState(filter, nbCh);
+		calibrationOut = new double[blockLength][nbCh];
+		nbCalibrationBlocks = 0;
+	}
+
+	public FilterEJML(Filter filter, int nbChannels, int blockSamples, boolean blockEngine) {
+		// Block engine for many channels (if `blockEngine`, otherwise blocks
+		// go to Filter.transformBlock): filters blocks of `blockSamples`
+		// samples x `nbChannels` channels with preallocated matrices.
+		//
+		// Inputs and outputs are kept in row-major [order+blockLength, nbCh]
+		// matrices holding the last `order` samples followed by the block,
+		// and each output row is a combination of earlier rows (Direct Form I):
+		//		Y[n] = b[0]*X[n] + ... + b[order]*X[n-order]
+		//		       - a[1]*Y[n-1] - ... - a[order]*Y[n-order]
+		// so every step is an operation on a whole row of channels, written
+		// as loops over the matrices' data. Zero `b` coefficients (every
+		// other one for a bandpass) are skipped. (The feed-forward part is
+		// also a product with a banded [blockLength, order+blockLength]
+		// matrix, but CommonOps.mult does not skip its zeros and measured
+		// about twice slower than these loops.)
+
+		b = filter.getB();
+		a = filter.getA();
+		nB = b.length;
+		nA = a.length;
+		order = nB - 1;
+		nbCh = nbChannels;
+		blockLength = blockSamples;
+		useBlockEngine = blockEngine;
+		nbCalibrationBlocks = CALIBRATION_BLOCKS;
+
+		if (useBlockEngine) {
+			inHistory = new DenseMatrix64F(order + blockLength, nbCh);
+			outHistory = new DenseMatrix64F(order + blockLength, nbCh);
+		} else {
+			scalarFilter = filter;
+			scalarState = new FilterState(filter, nbCh);
+		}
+
+	}
+
+	public void transformBlock(double[][] in, double[][] out) {
+		// Filter a block `in` [blockLength,nbCh] into `out` [blockLength,nbCh]
+		// (can be the same array, as inputs are copied first). Allocates
+		// nothing.
+
+		if (in.length != blockLength) {
+			throw new IllegalArgumentException("Block has " + in.length + " samples instead of " + blockLength + ".");
+		}
+		if (nbCalibrationBlocks < CALIBRATION_BLOCKS) {
+			calibrate(in, out);
+		} else if (useBlockEngine) {
+			blockTransform(in, out);
+		} else {
+			scalarFilter.transformBlock(in, out, scalarState);
+		}
+
+	}
+
+	private void calibrate(double[][] in, double[][] out) {
+		// Run both engines on the block (the block engine first, as `in` and
+		// `out` can be the same array), then keep the faster one
+
+		long startTime = System.nanoTime();
+		blockTransform(in, calibrationOut);
+		long midTime = System.nanoTime();
+		scalarFilter.transformBlock(in, out, scalarState);
+		long endTime = System.nanoTime();
+
+		if (++nbCalibrationBlocks > CALIBRATION_WARMUP_BLOCKS) {
+			blockTime += midTime - startTime;
+			scalarTime += endTime - midTime;
+		}
+		if (nbCalibrationBlocks == CALIBRATION_BLOCKS) {
+			useBlockEngine = blockTime < scalarTime;
+			calibrationOut = null;
+			if (useBlockEngine) {
+				scalarFilter = null;
+				scalarState = null;
+			} else {
+				inHistory = null;
+				outHistory = null;
+			}
+		}
+
+	}
+
+	private void blockTransform(double[][] in, double[][] out) {
+
+		double[] xData = inHistory.data;
+		double[] yData = outHistory.data;
+
+		for (int n = 0; n < blockLength; n++) {
+			System.arraycopy(in[n], 0, xData, (order + n)*nbCh, nbCh);
+		}
+
+		// Feedforward and feedback parts, row by row. The row being computed
+		// is accumulated in `out`, a different array from the histories, so
+		// that the JIT can vectorize the loops over channels.
+		for (int n = 0; n < blockLength; n++) {
+			int row = (order + n)*nbCh;
+			double[] y = out[n];
+			double b0 = b[0];
+			for (int c = 0; c < nbCh; c++) {
+				y[c] = b0*xData[row + c];
+			}
+			for (int k = 1; k < nB; k++) {
+				double bk = b[k];
+				double ak = a[k];
+				int prev = row - k*nbCh;
+				if (bk != 0) {
+					for (int c = 0; c < nbCh; c++) {
+						y[c] += bk*xData[prev + c] - ak*yData[prev + c];
+					}
+				} else {
+					for (int c = 0; c < nbCh; c++) {
+						y[c] -= ak*yData[prev + c];
+					}
+				}
+			}
+			System.arraycopy(y, 0, yData, row, nbCh);
+		}
+
+		// Keep the last `order` inputs and outputs for the next block
+		System.arraycopy(xData, blockLength*nbCh, xData, 0, order*nbCh);
+		System.arraycopy(yData, blockLength*nbCh, yData, 0, order*nbCh);
 
 	}
 
+	public void reset() {
+		if (inHistory != null) {
+			inHistory.zero();
+			outHistory.zero();
+		}
+		if (scalarState != null) {
+			scalarState.reset();
+		}
+	}
+
+	public boolean usesBlockEngine() {
+		// Engine used for the next blocks (during calibration, the one that
+		// is ahead so far)
+		if (nbCalibrationBlocks < CALIBRATION_BLOCKS) {
+			return blockTime < scalarTime;
+		}
+		return useBlockEngine;
+	}
+
+	public boolean isCalibrated() {
+		return nbCalibrationBlocks >= CALIBRATION_BLOCKS;
+	}
+
 	public SimpleMatrix transform(SimpleMatrix x, SimpleMatrix y) {
-		return invCoeffB.mult(x).minus(invCoeffA.extractMatrix(0,invCoeffA.END,0,nA-1).mult(y)); //.divide(invCoeffA.get(nA-1));
+		// invCoeffB*x - invCoeffA[0:nA-1]*y, into a matrix kept between calls
+		// (overwritten by the next call)
+		if (result == null || result.numCols != x.numCols()) {
+			result = new DenseMatrix64F(1, x.numCols());
+		}
+		transform(x.getMatrix(), y.getMatrix(), result);
+		return SimpleMatrix.wrap(result);
 	}
- 
+
+	public DenseMatrix64F transform(DenseMatrix64F x, DenseMatrix64F y, DenseMatrix64F out) {
+		// Same as transform(SimpleMatrix, SimpleMatrix) into `out` [1,nbCh].
+		// Allocates nothing.
+		CommonOps.mult(invCoeffB.getMatrix(), x, out);
+		CommonOps.multAdd(-1, feedbackA, y, out);
+		return out;
+	}
+
 	public int getNB() {
 		return nB;
 	}
@@ -0,0 +1,243 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+// Implements streaming FIR filtering with FFT-based overlap-save convolution
+public class FilterFIR {
+    // Long linear-phase FIR filters (hundreds of taps) are too slow to run
+    // in direct form on many channels, since each output costs nbTaps
+    // multiply-adds. Here the input of each channel is cut into frames of
+    // `fftLength` samples overlapping by nbTaps-1 samples (overlap-save):
+    // each frame is transformed with JTransforms, multiplied by the
+    // precomputed spectrum of the taps, and transformed back; the last
+    // `step` = fftLength-nbTaps+1 outputs are valid and kept.
+    //
+    // Samples can be pushed in blocks of any length. Outputs come out
+    // delayed by getLatency() = `step` samples (on top of the (nbTaps-1)/2
+    // samples of group delay of a linear-phase filter), the first ones being
+    // zeros. A larger fftLength costs fewer operations per sample but adds
+    // latency.
+    //
+    // All buffers are allocated in the constructor.
+    //
+    // Args:
+    //  taps (double[]) : FIR coefficients
+    //  nbCh (int) : number of channels
+    //  fftLength (int) : frame length, even and at least nbTaps (default:
+    //      smallest power of 2 above 2*nbTaps-1)
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private int nbTaps;
+    private int nbCh;
+    private int fftLength;
+    private int step;
+    private int pos;
+
+    private double[] kernelSpectrum;
+    private double[][] inBuffer;
+    private double[][] outBuffer;
+    private double[] frame;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public FilterFIR(double[] taps, int nbChannels) {
+        this(taps, nbChannels, Integer.highestOneBit(Math.max(2*taps.length - 1, 1))*2);
+    }
+
+    public FilterFIR(double[] taps, int nbChannels, int frameLength) {
+
+        if (frameLength < taps.length || frameLength % 2 != 0) {
+            throw new IllegalArgumentException("FFT length must be even and at least " + taps.length + ".");
+        }
+
+        nbTaps = taps.length;
+        nbCh = nbChannels;
+        fftLength = frameLength;
+        step = fftLength - nbTaps + 1;
+        pos = 0;
+
+
+        // Spectrum of the zero-padded taps, in JTransforms' packed format
+        kernelSpectrum = new double[fftLength];
+        System.arraycopy(taps, 0, kernelSpectrum, 0, nbTaps);
+        FFTPlanCache.get(fftLength).realForward(kernelSpectrum);
+
+        // Each input buffer holds the last nbTaps-1 samples of the previous
+        // frame, followed by the `step` samples of the current one
+        inBuffer = new double[nbCh][fftLength];
+        outBuffer = new double[nbCh][step];
+        frame = new double[fftLength];
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public void transformBlock(double[][] in, double[][] out) {
+        // Filter a block of samples `in` [nbSamples,nbCh] into `out`
+        // [nbSamples,nbCh] (can be the same array). out[n] is the filter
+        // output for the sample pushed getLatency() samples before in[n].
+
+        int offset = nbTaps - 1;
+
+        for (int n = 0; n < in.length; n++) {
+            double[] x = in[n];
+            double[] y = out[n];
+            for (int c = 0; c < nbCh; c++) {
+                double xc = x[c];
+                y[c] = outBuffer[c][pos];
+                inBuffer[c][offset + pos] = xc;
+            }
+            pos++;
+            if (pos == step) {
+                for (int c = 0; c < nbCh; c++) {
+                    processFrame(inBuffer[c], outBuffer[c]);
+                }
+                pos = 0;
+            }
+        }
+
+    }
+
+    public void reset() {
+        for (int c = 0; c < nbCh; c++) {
+            Arrays.fill(inBuffer[c], 0.);
+            Arrays.fill(outBuffer[c], 0.);
+        }
+        pos = 0;
+    }
+
+    public int getLatency() {
+        return step;
+    }
+
+    public int getFftLength() {
+        return fftLength;
+    }
+
+    public int getNbTaps() {
+        return nbTaps;
+    }
+
+    private void processFrame(double[] input, double[] output) {
+        // Circular convolution of a full input frame with the taps; the
+        // last `step` values are the linear convolution outputs
+
+        System.arraycopy(input, 0, frame, 0, fftLength);
+        FFTPlanCache.get(fftLength).realForward(frame);
+
+        // Multiply spectra (packed format: frame[0] and frame[1] are the
+        // real DC and Nyquist values, then (re, im) pairs)
+        frame[0] *= kernelSpectrum[0];
+        frame[1] *= kernelSpectrum[1];
+        for (int k = 2; k < fftLength; k += 2) {
+            double re = frame[k];
+            double im = frame[k + 1];
+            double hRe = kernelSpectrum[k];
+            double hIm = kernelSpectrum[k + 1];
+            frame[k] = re*hRe - im*hIm;
+            frame[k + 1] = re*hIm + im*hRe;
+        }
+
+        FFTPlanCache.get(fftLength).realInverse(frame, true);
+        System.arraycopy(frame, nbTaps - 1, output, 0, step);
+
+        // Keep the last nbTaps-1 input samples for the next frame
+        System.arraycopy(input, step, input, 0, nbTaps - 1);
+
+    }
+
+    public static double[] design(double samplingFrequency, String filterType, int nbTaps, double fc1, double fc2) {
+        // Linear-phase FIR design by the window method (Hamming window),
+        // with an odd number of taps `nbTaps`. The pass band is normalized
+        // to unit gain at DC (lowpass, bandstop), Nyquist (highpass) or the
+        // center frequency (bandpass).
+
+        if (nbTaps % 2 == 0) {
+            throw new IllegalArgumentException("Number of taps must be odd.");
+        }
+
+        double f1 = fc1/samplingFrequency;
+        double f2 = fc2/samplingFrequency;
+        double[] h = new double[nbTaps];
+        int mid = nbTaps/2;
+        double fRef;
+
+        switch (FilterSpec.parsePassType(filterType)) {
+            case lowpass:
+                for (int i = 0; i < nbTaps; i++) h[i] = sinc(2*f1, i - mid);
+                fRef = 0.;
+                break;
+            case highpass:
+                for (int i = 0; i < nbTaps; i++) h[i] = sinc(1., i - mid) - sinc(2*f1, i - mid);
+                fRef = 0.5;
+                break;
+            case bandpass:
+                for (int i = 0; i < nbTaps; i++) h[i] = sinc(2*f2, i - mid) - sinc(2*f1, i - mid);
+                fRef = (f1 + f2)/2;
+                break;
+            default: // bandstop
+                for (int i = 0; i < nbTaps; i++) h[i] = sinc(1., i - mid) - sinc(2*f2, i - mid) + sinc(2*f1, i - mid);
+                fRef = 0.;
+                break;
+        }
+
+        // Window, then normalize the gain at fRef
+        double re = 0;
+        double im = 0;
+        for (int i = 0; i < nbTaps; i++) {
+            h[i] *= 0.54 - 0.46*Math.cos(2*Math.PI*i/(nbTaps - 1));
+            re += h[i]*Math.cos(2*Math.PI*fRef*i);
+            im -= h[i]*Math.sin(2*Math.PI*fRef*i);
+        }
+        double gain = Math.hypot(re, im);
+        for (int i = 0; i < nbTaps; i++) {
+            h[i] /= gain;
+        }
+        return h;
+
+    }
+
+    private static double sinc(double bandwidth, int n) {
+        // Impulse response of an ideal lowpass filter of normalized
+        // bandwidth `bandwidth` (cutoff bandwidth/2) at sample n
+        return (n == 0) ? bandwidth : Math.sin(Math.PI*bandwidth*n)/(Math.PI*n);
+    }
+
+    public static void main(String[] args) {
+
+        // Compare with direct-form convolution on a fake signal, pushed in
+        // blocks of uneven length
+        double fs = 256.;
+        int nbCh = 4;
+        double[] taps = design(fs, "bandpass", 257, 2, 36);
+        FilterFIR firFilt = new FilterFIR(taps, nbCh);
+        int latency = firFilt.getLatency();
+        System.out.println(taps.length + " taps, FFT length " + firFilt.getFftLength() + ", latency " + latency);
+
+        double[][] fakeSignal = Filter.generateFakeSignal(20, nbCh, fs);
+        double[][] filtSignal = new double[fakeSignal.length][nbCh];
+        for (int start = 0, len = 1; start < fakeSignal.length; start += len, len = len % 97 + 13) {
+            int end = Math.min(start + len, fakeSignal.length);
+            double[][] block = Arrays.copyOfRange(fakeSignal, start, end);
+            double[][] filtBlock = new double[end - start][nbCh];
+            firFilt.transformBlock(block, filtBlock);
+            System.arraycopy(filtBlock, 0, filtSignal, start, end - start);
+        }
+
+        double maxDiff = 0;
+        for (int n = latency; n < fakeSignal.length; n++) {
+            for (int c = 0; c < nbCh; c++) {
+                double y = 0;
+                for (int k = 0; k < taps.length && k <= n - latency; k++) {
+                    y += taps[k]*fakeSignal[n - latency - k][c];
+                }
+                maxDiff = Math.max(maxDiff, Math.abs(filtSignal[n][c] - y));
+            }
+        }
+        System.out.println("Max abs difference with direct form: " + maxDiff);
+
+    }
+
+}
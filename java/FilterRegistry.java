@@ -0,0 +1,158 @@
+import biz.source_code.dsp.filter.FilterCharacteristicsType;
+import biz.source_code.dsp.filter.IirFilterCoefficients;
+import biz.source_code.dsp.filter.IirFilterDesignFisher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays; // For printing arrays when debugging
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Thread-safe cache of Butterworth filter coefficients, keyed on FilterSpec
+public class FilterRegistry {
+    // Designing a filter (IirFilterDesignFisher.design) is done once per
+    // spec; every later Filter with the same spec shares the cached
+    // coefficients. The returned arrays are shared and must not be modified.
+    //
+    // Common specs are preloaded from the `filters.txt` resource, so that
+    // they are not designed at startup. Each line of the resource holds one
+    // spec and its coefficients:
+    //      fs passType order fc1 fc2 ; b0 b1 ... ; a0 a1 ...
+    // Empty lines and lines starting with '#' are ignored.
+    //
+    // Coefficients that were designed elsewhere (e.g. with scipy's
+    // `signal.butter`) and differ from the Fisher design for their spec are
+    // put in the static initializer below rather than in the resource, so
+    // that they do not depend on it being on the classpath. Without the
+    // resource, the other specs are designed on first use (with the same
+    // result) and a warning is printed once.
+
+    private static final String RESOURCE = "/filters.txt";
+
+    private static final Map<FilterSpec, double[][]> cache = new ConcurrentHashMap<FilterSpec, double[][]>();
+
+    static {
+        // 2-36 Hz bandpass for fs=220, generated with scipy's `signal.butter`
+        // (formerly in FilterEJML)
+        put(new FilterSpec(220., "bandpass", 5, 2, 36),
+            new double[]{0.007825767026834064, 0.0, -0.039128835134170314, 0.0, 0.07825767026834063, 0.0,
+                -0.07825767026834063, 0.0, 0.039128835134170314, 0.0, -0.007825767026834064},
+            new double[]{1.0, -6.666877710038148, 20.102068981754037, -36.371474827307594, 44.02088295915196,
+                -37.38251129683893, 22.566371667058892, -9.547838628852581, 2.708143061046102,
+                -0.4653152296484517, 0.03655122133849275});
+
+        InputStream in = FilterRegistry.class.getResourceAsStream(RESOURCE);
+        if (in != null) {
+            try {
+                load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + RESOURCE + ".", e);
+            }
+        } else {
+            System.err.println("FilterRegistry: " + RESOURCE + " not found on the classpath, filters will be designed on first use.");
+        }
+    }
+
+    private FilterRegistry() {
+    }
+
+    public static double[][] get(FilterSpec spec) {
+        // Return {b, a} for `spec`, designing the filter on the first call
+        return cache.computeIfAbsent(spec, FilterRegistry::design);
+    }
+
+    public static void put(FilterSpec spec, double[] b, double[] a) {
+        cache.put(spec, new double[][]{b.clone(), a.clone()});
+    }
+
+    public static boolean contains(FilterSpec spec) {
+        return cache.containsKey(spec);
+    }
+
+    public static void load(InputStream in) throws IOException {
+        // Add the specs and coefficients of a resource in the format above
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(";");
+                if (parts.length != 3) {
+                    throw new IOException("Malformed filter line: " + line);
+                }
+                String[] s = parts[0].trim().split("\\s+");
+                FilterSpec spec = new FilterSpec(Double.parseDouble(s[0]), s[1], Integer.parseInt(s[2]),
+                    Double.parseDouble(s[3]), Double.parseDouble(s[4]));
+                cache.put(spec, new double[][]{parseArray(parts[1]), parseArray(parts[2])});
+            }
+        }
+
+    }
+
+    public static String format(FilterSpec spec) {
+        // Resource line for `spec`, as loaded by load()
+
+        double[][] coeffs = get(spec);
+        StringBuilder sb = new StringBuilder(spec.toString());
+        for (double[] c: coeffs) {
+            sb.append(" ;");
+            for (double v: c) {
+                sb.append(' ').append(v);
+            }
+        }
+        return sb.toString();
+
+    }
+
+    private static double[][] design(FilterSpec spec) {
+        IirFilterCoefficients coeffs = IirFilterDesignFisher.design(spec.getPassType(),
+            FilterCharacteristicsType.butterworth, spec.getOrder(), 0.,
+            spec.getFc1()/spec.getFs(), spec.getFc2()/spec.getFs());
+        return new double[][]{coeffs.b, coeffs.a};
+    }
+
+    private static double[] parseArray(String s) {
+        String[] fields = s.trim().split("\\s+");
+        double[] values = new double[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Double.parseDouble(fields[i]);
+        }
+        return values;
+    }
+
+    public static void main(String[] args) {
+
+        // Print the resource lines of the filters used in this project, e.g.
+        // to regenerate filters.txt (the 220 Hz line is the one put in the
+        // static initializer, and is not needed in the resource)
+        FilterSpec[] specs = new FilterSpec[]{
+            new FilterSpec(220., "bandpass", 5, 2, 36),
+            new FilterSpec(256., "bandpass", 5, 2, 36),
+            new FilterSpec(256., "bandpass", 4, 2, 36),
+            new FilterSpec(256., "highpass", 2, 1, 0),
+            new FilterSpec(256., "lowpass", 4, 30, 0)};
+
+        for (FilterSpec spec: specs) {
+            System.out.println(format(spec));
+        }
+
+        // Time a design and a cache hit
+        FilterSpec spec = new FilterSpec(500., "bandstop", 4, 55, 65);
+        long startTime = System.nanoTime();
+        double[][] coeffs1 = get(spec);
+        long midTime = System.nanoTime();
+        double[][] coeffs2 = get(new FilterSpec(500., "bandstop", 4, 55, 65));
+        long endTime = System.nanoTime();
+        System.out.println("Design: " + (midTime-startTime)/1000 + "us, cache hit: " + (endTime-midTime)/1000
+            + "us, same arrays: " + (coeffs1 == coeffs2));
+
+    }
+
+}
@@ -0,0 +1,364 @@
+import biz.source_code.dsp.filter.FilterPassType;
+import biz.source_code.dsp.math.Complex;
+
+import java.util.ArrayList;
+import java.util.Arrays; // For printing arrays when debugging
+import java.util.List;
+
+// Implements Butterworth filtering as a cascade of second-order sections (biquads)
+public class FilterSOS {
+    // High-order filters (e.g. a 5th-order bandpass, 10 poles) are
+    // numerically fragile as a single direct-form section, because the
+    // polynomial coefficients are very sensitive to rounding. Here the
+    // same design as Filter is split into cascaded biquads, each with its
+    // own pair of poles and zeros.
+    //
+    // The poles and zeros are computed with the same Butterworth prototype
+    // and bilinear transform as IirFilterDesignFisher (which only exposes
+    // the expanded polynomials). The overall gain is then matched to the
+    // Fisher design at a passband frequency.
+    //
+    // Coefficients are stored flat, 5 per section: b0, b1, b2, a1, a2
+    // (a0 = 1). Filter state is a FilterState of order 2*nbSections; each
+    // section keeps its 2 Direct Form II Transposed delays contiguously.
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private int nbSections;
+    private double[] sos;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public FilterSOS(double samplingFrequency, String filterType, int filterOrder, double fc1, double fc2) {
+        this(new FilterSpec(samplingFrequency, filterType, filterOrder, fc1, fc2));
+    }
+
+    public FilterSOS(FilterSpec spec) {
+
+        FilterPassType filterPassType = spec.getPassType();
+        double samplingFrequency = spec.getFs();
+        int filterOrder = spec.getOrder();
+        double fc1 = spec.getFc1();
+        double fc2 = spec.getFc2();
+
+        double fc1Norm = fc1/samplingFrequency;
+        double fc2Norm = fc2/samplingFrequency;
+
+        // 1. Poles and zeros in the z-plane
+        List<Complex> zPoles = new ArrayList<Complex>();
+        List<Complex> zZeros = new ArrayList<Complex>();
+        designPolesAndZeros(filterPassType, filterOrder, fc1Norm, fc2Norm, zPoles, zZeros);
+
+        // 2. Pair them into sections
+        sos = pairSections(zPoles, zZeros);
+        nbSections = sos.length/5;
+
+        // 3. Match the gain of the direct-form design at a passband frequency
+        double[][] coeffs = FilterRegistry.get(spec);
+        double fRef;
+        switch (filterPassType) {
+            case highpass: fRef = 0.5; break;
+            case bandpass: fRef = (fc1Norm + fc2Norm)/2; break;
+            default: fRef = 0.; break;
+        }
+        double gain = evaluate(coeffs[0], coeffs[1], fRef).div(response(fRef)).re();
+        sos[0] *= gain;
+        sos[1] *= gain;
+        sos[2] *= gain;
+
+    }
+
+    private FilterSOS(double[] sections) {
+        sos = sections;
+        nbSections = sos.length/5;
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public static FilterSOS cascade(FilterSOS... stages) {
+        // Single filter running all sections of `stages`, in order, so that
+        // each sample goes through the whole chain in one pass
+
+        int length = 0;
+        for (FilterSOS stage: stages) {
+            length += stage.sos.length;
+        }
+        double[] sections = new double[length];
+        int offset = 0;
+        for (FilterSOS stage: stages) {
+            System.arraycopy(stage.sos, 0, sections, offset, stage.sos.length);
+            offset += stage.sos.length;
+        }
+        return new FilterSOS(sections);
+
+    }
+
+    public void transform(double[] x, double[] y, FilterState state) {
+        // Filter one multichannel sample `x` [nbCh] into `y` [nbCh]
+        // (can be the same array), updating `state`.
+
+        double[] z = state.getZ();
+        int order = checkState(state);
+
+        for (int c = 0; c < x.length; c++) {
+            y[c] = transform(x[c], z, c*order);
+        }
+
+    }
+
+    public void transformBlock(double[][] in, double[][] out, FilterState state) {
+        // Filter a block of multichannel samples `in` [nbSamples,nbCh] into
+        // `out` [nbSamples,nbCh] (can be the same array), updating `state`.
+        // Each channel goes through the whole block before the next one, so
+        // its delays stay in cache.
+
+        double[] z = state.getZ();
+        int order = checkState(state);
+        int nbCh = state.getNbCh();
+
+        for (int c = 0; c < nbCh; c++) {
+            int offset = c*order;
+            for (int n = 0; n < in.length; n++) {
+                out[n][c] = transform(in[n][c], z, offset);
+            }
+        }
+
+    }
+
+    public void initState(double[] x0, FilterState state) {
+        // Set `state` to the steady state of each channel for a constant
+        // input equal to x0[c], e.g. the first sample of a session. Each
+        // section is set for the constant output of the previous one.
+
+        double[] z = state.getZ();
+        int order = checkState(state);
+
+        for (int c = 0; c < x0.length; c++) {
+            steadyState(sos, x0[c], z, c*order);
+        }
+
+    }
+
+    static void steadyState(double[] sos, double x0, double[] z, int offset) {
+        // Delays [z1, z2] of each section of the cascade `sos` (as in
+        // getSOS()) for a constant input x0, into z[offset..offset+2*nbSections-1]:
+        // each section is set for the constant output of the previous one,
+        // y = DC gain*u
+
+        double u = x0;
+        for (int k = 0; k < sos.length; k += 5, offset += 2) {
+            double y = (sos[k] + sos[k + 1] + sos[k + 2])/(1 + sos[k + 3] + sos[k + 4])*u;
+            z[offset] = y - sos[k]*u;
+            z[offset + 1] = sos[k + 2]*u - sos[k + 4]*y;
+            u = y;
+        }
+
+    }
+
+    public int getNbSections() {
+        return nbSections;
+    }
+
+    public double[] getSOS() {
+        // Copy of the coefficients [b0, b1, b2, a1, a2] of each section,
+        // concatenated
+        return sos.clone();
+    }
+
+    private double transform(double x, double[] z, int offset) {
+        // Run sample `x` through all sections, with the delays of this
+        // channel starting at z[offset]
+
+        for (int s = 0, k = 0; s < nbSections; s++, k += 5, offset += 2) {
+            double y = sos[k]*x + z[offset];
+            z[offset] = sos[k + 1]*x - sos[k + 3]*y + z[offset + 1];
+            z[offset + 1] = sos[k + 2]*x - sos[k + 4]*y;
+            x = y;
+        }
+        return x;
+
+    }
+
+    private int checkState(FilterState state) {
+        int order = state.getOrder();
+        if (order != 2*nbSections) {
+            throw new IllegalArgumentException("State has order " + order + " instead of " + 2*nbSections + ".");
+        }
+        return order;
+    }
+
+    private Complex response(double f) {
+        // Frequency response of the cascade at normalized frequency f
+        Complex h = Complex.ONE;
+        for (int k = 0; k < sos.length; k += 5) {
+            h = h.mul(evaluate(new double[]{sos[k], sos[k + 1], sos[k + 2]},
+                new double[]{1., sos[k + 3], sos[k + 4]}, f));
+        }
+        return h;
+    }
+
+    private static Complex evaluate(double[] b, double[] a, double f) {
+        // Frequency response of b(z)/a(z) at normalized frequency f
+        Complex num = Complex.ZERO;
+        Complex den = Complex.ZERO;
+        for (int k = 0; k < Math.max(b.length, a.length); k++) {
+            Complex zk = Complex.expj(-2*Math.PI*f*k);
+            if (k < b.length) num = num.add(zk.mul(b[k]));
+            if (k < a.length) den = den.add(zk.mul(a[k]));
+        }
+        return num.div(den);
+    }
+
+    private static void designPolesAndZeros(FilterPassType filterPassType, int n, double f1, double f2,
+                                            List<Complex> zPoles, List<Complex> zZeros) {
+        // Butterworth prototype, frequency transformation with prewarping,
+        // and bilinear transform (same steps as IirFilterDesignFisher)
+
+        double w1 = 2*Math.tan(Math.PI*f1);
+        double w2 = 2*Math.tan(Math.PI*f2);
+        double w0 = Math.sqrt(w1*w2);
+        double bw = w2 - w1;
+
+        List<Complex> sPoles = new ArrayList<Complex>();
+        List<Complex> sZeros = new ArrayList<Complex>();
+
+        for (int i = 0; i < n; i++) {
+            Complex p = Complex.expj((n/2. + 0.5 + i)*Math.PI/n);
+            switch (filterPassType) {
+                case lowpass:
+                    sPoles.add(p.mul(w1));
+                    break;
+                case highpass:
+                    sPoles.add(Complex.div(w1, p));
+                    sZeros.add(Complex.ZERO);
+                    break;
+                case bandpass: {
+                    Complex hba = p.mul(bw/2);
+                    Complex temp = Complex.sub(1, Complex.div(w0, hba).sqr()).sqrt();
+                    sPoles.add(hba.mul(temp.add(1)));
+                    sPoles.add(hba.mul(Complex.sub(1, temp)));
+                    sZeros.add(Complex.ZERO);
+                    break;
+                }
+                case bandstop: {
+                    Complex hba = Complex.div(bw/2, p);
+                    Complex temp = Complex.sub(1, Complex.div(w0, hba).sqr()).sqrt();
+                    sPoles.add(hba.mul(temp.add(1)));
+                    sPoles.add(hba.mul(Complex.sub(1, temp)));
+                    sZeros.add(new Complex(0, w0));
+                    sZeros.add(new Complex(0, -w0));
+                    break;
+                }
+            }
+        }
+
+        for (Complex s: sPoles) {
+            zPoles.add(s.add(2).div(Complex.sub(2, s)));
+        }
+        for (Complex s: sZeros) {
+            zZeros.add(s.add(2).div(Complex.sub(2, s)));
+        }
+        while (zZeros.size() < zPoles.size()) { // zeros at infinity map to z = -1
+            zZeros.add(new Complex(-1));
+        }
+
+    }
+
+    private static double[] pairSections(List<Complex> poles, List<Complex> zeros) {
+        // Group poles (and zeros) into conjugate pairs or pairs of real
+        // values, then give each pole pair the closest remaining zero pair.
+        // Pole pairs are ordered from the farthest to the closest to the
+        // unit circle, so the most resonant sections come last.
+
+        List<double[]> polePairs = toQuadratics(poles);
+        List<double[]> zeroPairs = toQuadratics(zeros);
+
+        polePairs.sort((p, q) -> Double.compare(q[3], p[3]));
+
+        double[] sections = new double[5*polePairs.size()];
+        for (int s = 0; s < polePairs.size(); s++) {
+            double[] p = polePairs.get(s);
+            int best = 0;
+            for (int k = 1; k < zeroPairs.size(); k++) {
+                if (distance(zeroPairs.get(k), p) < distance(zeroPairs.get(best), p)) {
+                    best = k;
+                }
+            }
+            double[] z = zeroPairs.remove(best);
+            sections[5*s] = z[0];
+            sections[5*s + 1] = z[1];
+            sections[5*s + 2] = z[2];
+            sections[5*s + 3] = p[1];
+            sections[5*s + 4] = p[2];
+        }
+        return sections;
+
+    }
+
+    private static List<double[]> toQuadratics(List<Complex> roots) {
+        // Turn roots into polynomials {1, c1, c2, distance to unit circle,
+        // real part of a root, imaginary part of a root}, one per conjugate
+        // pair or pair of real roots (a lone real root gives c2 = 0).
+
+        double tol = 1e-10;
+        List<double[]> quadratics = new ArrayList<double[]>();
+        List<Double> reals = new ArrayList<Double>();
+
+        for (Complex r: roots) {
+            if (Math.abs(r.im()) < tol) {
+                reals.add(r.re());
+            } else if (r.im() > 0) { // its conjugate is skipped
+                quadratics.add(new double[]{1., -2*r.re(), r.re()*r.re() + r.im()*r.im(),
+                    1 - r.abs(), r.re(), r.im()});
+            }
+        }
+        for (int k = 0; k < reals.size(); k += 2) {
+            double r1 = reals.get(k);
+            if (k + 1 < reals.size()) {
+                double r2 = reals.get(k + 1);
+                quadratics.add(new double[]{1., -(r1 + r2), r1*r2,
+                    1 - Math.max(Math.abs(r1), Math.abs(r2)), r1, 0.});
+            } else {
+                quadratics.add(new double[]{1., -r1, 0., 1 - Math.abs(r1), r1, 0.});
+            }
+        }
+        return quadratics;
+
+    }
+
+    private static double distance(double[] q1, double[] q2) {
+        return Math.hypot(q1[4] - q2[4], Math.abs(q1[5]) - Math.abs(q2[5]));
+    }
+
+    public static void main(String[] args) {
+
+        double fs = 256.;
+
+        System.out.println("Bandpass filter 2-36 Hz, 5th order");
+        FilterSOS bpFilt = new FilterSOS(fs, "bandpass", 5, 2, 36);
+        System.out.println(bpFilt.getNbSections() + " sections: " + Arrays.toString(bpFilt.getSOS()));
+
+        // Compare with the direct-form Filter on a fake signal
+        int nbCh = 4;
+        double[][] fakeSignal = Filter.generateFakeSignal(10, nbCh, fs);
+        Filter refFilt = new Filter(fs, "bandpass", 5, 2, 36);
+        double[][] z = new double[nbCh][refFilt.getNB()];
+        FilterState state = new FilterState(nbCh, 2*bpFilt.getNbSections());
+        double[] y = new double[nbCh];
+
+        double maxDiff = 0;
+        for (int i = 0; i < fakeSignal.length; i++) {
+            z = refFilt.transform(fakeSignal[i], z);
+            bpFilt.transform(fakeSignal[i], y, state);
+            for (int c = 0; c < nbCh; c++) {
+                maxDiff = Math.max(maxDiff, Math.abs(y[c] - z[c][z[c].length - 1]));
+            }
+        }
+        System.out.println("Max abs difference with Filter: " + maxDiff);
+
+    }
+
+}
@@ -0,0 +1,100 @@
+import biz.source_code.dsp.filter.FilterPassType;
+
+import java.util.Objects;
+
+// Describes a Butterworth filter design, used as the key of FilterRegistry
+public final class FilterSpec {
+    // Cutoff frequencies are in Hz. Lowpass and highpass filters only use
+    // `fc1`, so `fc2` is set to 0 for them and two specs that differ only
+    // by an unused cutoff are equal.
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private final double fs;
+    private final FilterPassType passType;
+    private final int order;
+    private final double fc1;
+    private final double fc2;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public FilterSpec(double samplingFrequency, FilterPassType filterPassType, int filterOrder, double cutoff1, double cutoff2) {
+
+        fs = samplingFrequency;
+        passType = filterPassType;
+        order = filterOrder;
+        fc1 = cutoff1;
+        fc2 = (passType == FilterPassType.lowpass || passType == FilterPassType.highpass) ? 0. : cutoff2;
+
+    }
+
+    public FilterSpec(double samplingFrequency, String filterType, int filterOrder, double cutoff1, double cutoff2) {
+        this(samplingFrequency, parsePassType(filterType), filterOrder, cutoff1, cutoff2);
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public static FilterPassType parsePassType(String filterType) {
+        // Accepts the filter type strings used by Filter, e.g. "bandpass"
+
+        if (filterType.contains("lowpass")) {
+            return FilterPassType.lowpass;
+
+        } else if (filterType.contains("highpass")) {
+            return FilterPassType.highpass;
+
+        } else if (filterType.contains("bandstop")) {
+            return FilterPassType.bandstop;
+
+        } else if (filterType.contains("bandpass")) {
+            return FilterPassType.bandpass;
+
+        } else {
+            throw new RuntimeException("Filter type not recognized.");
+        }
+    }
+
+    public double getFs() {
+        return fs;
+    }
+
+    public FilterPassType getPassType() {
+        return passType;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public double getFc1() {
+        return fc1;
+    }
+
+    public double getFc2() {
+        return fc2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FilterSpec)) return false;
+        FilterSpec other = (FilterSpec) o;
+        return Double.compare(fs, other.fs) == 0 && passType == other.passType && order == other.order
+            && Double.compare(fc1, other.fc1) == 0 && Double.compare(fc2, other.fc2) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fs, passType, order, fc1, fc2);
+    }
+
+    @Override
+    public String toString() {
+        // Same format as the spec part of a FilterRegistry resource line
+        return fs + " " + passType + " " + order + " " + fc1 + " " + fc2;
+    }
+
+}
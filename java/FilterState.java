@@ -0,0 +1,60 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+public class FilterState {
+    // Internal state of a Filter for a multichannel signal, stored in a
+    // single flat array so that block filtering does not need to follow
+    // one state array per channel.
+    //
+    // The delay line of channel c occupies z[c*order, (c+1)*order), where
+    // `order` is the number of delay elements (nB - 1).
+
+    private int nbCh;
+    private int order;
+    private double[] z;
+
+    public FilterState(int nbChannels, int filterOrder) {
+        nbCh = nbChannels;
+        order = filterOrder;
+        z = new double[nbCh*order];
+    }
+
+    public FilterState(Filter filter, int nbChannels) {
+        this(nbChannels, filter.getNB() - 1);
+    }
+
+    public void reset() {
+        Arrays.fill(z, 0.);
+    }
+
+    public double[] snapshot() {
+        // Copy of the whole state, e.g. to resume after a reconnection
+        return z.clone();
+    }
+
+    public void restore(double[] snapshot) {
+        // Restore a state saved with snapshot()
+
+        if (snapshot.length != z.length) {
+            throw new IllegalArgumentException("Snapshot has " + snapshot.length + " values instead of " + z.length + ".");
+        }
+        System.arraycopy(snapshot, 0, z, 0, z.length);
+
+    }
+
+    public double[] getZ() {
+        return z;
+    }
+
+    public int getNbCh() {
+        return nbCh;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public void print() {
+        System.out.println(Arrays.toString(z));
+    }
+
+}
@@ -0,0 +1,186 @@
+import java.util.Arrays; // For printing arrays when debugging
+import java.util.stream.IntStream;
+
+// Implements offline zero-phase (forward-backward) filtering of recorded sessions
+public class FilterZeroPhase {
+    // Runs a Filter's coefficients over a whole recording forward, then
+    // backward, so that the phase shifts cancel out (like scipy's
+    // `signal.filtfilt` and Matlab's `filtfilt`). This is for offline
+    // analysis only: it needs the whole signal up front.
+    //
+    // As in scipy, both ends of each channel are extended by an odd
+    // reflection of `padLength` samples (3 * number of coefficients by
+    // default), and each pass starts from the steady-state filter state
+    // for its first sample (Filter.getSteadyState()), which removes most of
+    // the edge transients.
+    //
+    // Each channel is copied into a contiguous array and filtered in one
+    // tight loop; channels are processed in parallel.
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private double[] b;
+    private double[] a;
+    private int order;
+    private int padLength;
+    private double[] zi;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public FilterZeroPhase(Filter filter) {
+        this(filter, 3*Math.max(filter.getNB(), filter.getNA()));
+    }
+
+    public FilterZeroPhase(Filter filter, int padSamples) {
+
+        b = filter.getB();
+        a = filter.getA();
+        order = b.length - 1;
+        padLength = padSamples;
+        zi = filter.getSteadyState();
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public double[][] filtfilt(double[][] signal) {
+        // Filter a recording `signal` [nbSamples,nbCh] and return the
+        // zero-phase filtered signal [nbSamples,nbCh].
+
+        int nbSamples = signal.length;
+        int nbCh = signal[0].length;
+        double[][] filtSignal = new double[nbSamples][nbCh];
+
+        IntStream.range(0, nbCh).parallel().forEach(c -> {
+            double[] x = new double[nbSamples];
+            for (int n = 0; n < nbSamples; n++) {
+                x[n] = signal[n][c];
+            }
+            double[] y = filtfilt(x);
+            for (int n = 0; n < nbSamples; n++) {
+                filtSignal[n][c] = y[n];
+            }
+        });
+
+        return filtSignal;
+
+    }
+
+    public double[] filtfilt(double[] x) {
+        // Filter a single channel `x` [nbSamples] and return the zero-phase
+        // filtered channel [nbSamples].
+
+        int nbSamples = x.length;
+        if (nbSamples <= padLength) {
+            throw new IllegalArgumentException("Signal has " + nbSamples + " samples, it must be longer than the padding (" + padLength + ").");
+        }
+
+        // 1. Odd extension at both ends
+        double[] ext = new double[nbSamples + 2*padLength];
+        for (int i = 0; i < padLength; i++) {
+            ext[i] = 2*x[0] - x[padLength - i];
+            ext[padLength + nbSamples + i] = 2*x[nbSamples - 1] - x[nbSamples - 2 - i];
+        }
+        System.arraycopy(x, 0, ext, padLength, nbSamples);
+
+        // 2. Forward pass
+        double[] z = new double[order];
+        scaledState(ext[0], z);
+        lfilter(ext, z, false);
+
+        // 3. Backward pass
+        scaledState(ext[ext.length - 1], z);
+        lfilter(ext, z, true);
+
+        return Arrays.copyOfRange(ext, padLength, padLength + nbSamples);
+
+    }
+
+    public int getPadLength() {
+        return padLength;
+    }
+
+    private void scaledState(double x0, double[] z) {
+        // Steady-state filter state for a constant input equal to `x0`
+        for (int k = 0; k < order; k++) {
+            z[k] = zi[k]*x0;
+        }
+    }
+
+    private void lfilter(double[] x, double[] z, boolean backward) {
+        // Discrete Form II Transposed over the whole array `x`, in place,
+        // starting from state `z`
+
+        int n = x.length;
+        for (int j = 0; j < n; j++) {
+            int i = backward ? n - 1 - j : j;
+            double xi = x[i];
+            double y = b[0]*xi + z[0];
+            for (int k = 1; k < order; k++) {
+                z[k - 1] = b[k]*xi + z[k] - a[k]*y;
+            }
+            z[order - 1] = b[order]*xi - a[order]*y;
+            x[i] = y;
+        }
+
+    }
+
+    public static void main(String[] args) {
+
+        double fs = 256.;
+        Filter bpFilt = new Filter(fs, "bandpass", 4, 2, 36);
+        FilterZeroPhase zpFilt = new FilterZeroPhase(bpFilt);
+
+        // 1. A passband sine comes out with no phase shift: away from the
+        // edges (3 s, for the transients of the 2 Hz cutoff) it is only
+        // scaled by the squared filter gain
+        int nbCh = 4;
+        double f0 = 10.;
+        double[][] sine = new double[(int)(10*fs)][nbCh];
+        for (int i = 0; i < sine.length; i++) {
+            for (int c = 0; c < nbCh; c++) {
+                sine[i][c] = Math.sin(2*Math.PI*f0*i/fs + c);
+            }
+        }
+        double[][] filtSine = zpFilt.filtfilt(sine);
+        double sxy = 0;
+        double sxx = 0;
+        for (int i = 3*(int)fs; i < sine.length - 3*(int)fs; i++) {
+            for (int c = 0; c < nbCh; c++) {
+                sxy += filtSine[i][c]*sine[i][c];
+                sxx += sine[i][c]*sine[i][c];
+            }
+        }
+        double gain = sxy/sxx;
+        double maxDiff = 0;
+        for (int i = 3*(int)fs; i < sine.length - 3*(int)fs; i++) {
+            for (int c = 0; c < nbCh; c++) {
+                maxDiff = Math.max(maxDiff, Math.abs(filtSine[i][c] - gain*sine[i][c]));
+            }
+        }
+        System.out.println("Gain at " + f0 + " Hz: " + gain + ", max abs residual after scaling: " + maxDiff);
+
+        // 2. A constant through a lowpass filter stays constant, edges included
+        FilterZeroPhase lpFilt = new FilterZeroPhase(new Filter(fs, "lowpass", 4, 30, 0));
+        double[] constant = new double[1000];
+        Arrays.fill(constant, 3.);
+        double[] filtConstant = lpFilt.filtfilt(constant);
+        maxDiff = 0;
+        for (int i = 0; i < constant.length; i++) {
+            maxDiff = Math.max(maxDiff, Math.abs(filtConstant[i] - 3.));
+        }
+        System.out.println("Max abs difference with a constant signal: " + maxDiff);
+
+        // 3. Reprocess a recording
+        double[][] signal = TestFloatStorage.getRealSignal("../data/BandPass_FullSampled_Raw_EEG1.csv");
+        long startTime = System.currentTimeMillis();
+        double[][] filtSignal = zpFilt.filtfilt(signal);
+        long endTime = System.currentTimeMillis();
+        System.out.println(signal.length + " samples x " + signal[0].length + " channels filtered in " + (endTime-startTime) + "ms");
+
+    }
+
+}
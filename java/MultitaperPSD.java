@@ -0,0 +1,361 @@
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.DecompositionFactory;
+import org.ejml.interfaces.decomposition.EigenDecomposition;
+
+import java.util.Arrays; // For printing arrays when debugging
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Implements multitaper PSD estimation with DPSS (Slepian) tapers
+public class MultitaperPSD {
+    // A multitaper estimate averages the periodograms of the same window
+    // multiplied by K orthogonal tapers, the discrete prolate spheroidal
+    // sequences (DPSS), which concentrate their energy in a band of
+    // half-width NW/N cycles/sample. This reduces the variance of the
+    // estimate about K times with little leakage, at the cost of a
+    // frequency resolution of about 2*NW/N*fs.
+    //
+    // The tapers are the eigenvectors, for the K largest eigenvalues, of the
+    // symmetric tridiagonal matrix
+    //      diag[i] = ((N-1-2i)/2)^2*cos(2*pi*W), offdiag[i] = i*(N-i)/2
+    // with W = NW/N, found with EJML's symmetric eigen decomposition. They
+    // are computed once per (length, NW, K) and cached process-wide, so
+    // every instance and every session share them (getTapers() returns a
+    // copy).
+    //
+    // Each taper is normalized to unit energy, and its sign set as in
+    // scipy.signal.windows.dpss: positive sum for even k, and for odd k a
+    // positive first sample among those with w^2 > max(1e-7, 1/N).
+    //
+    // As in FFT, the mean of the window is removed, and an instance is not
+    // thread-safe (one per thread or session); the batched
+    // computePSD(double[][], double[][]) can use the common ForkJoin pool
+    // by itself. The output is a one-sided power spectral density
+    // (units^2/Hz), on the fftLength/2 + 1 frequencies of getFreqBins().
+    //
+    // Args:
+    //  inputLength (int) : window length (number of samples)
+    //  fftLength (int) : FFT length (>= inputLength, zero-padded)
+    //  samplingFrequency (double) : sampling frequency, in Hz
+    //  NW (double) : time-halfbandwidth product (e.g. 2, 3 or 4)
+    //  K (int) : number of tapers (usually 2*NW - 1)
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private static final ConcurrentHashMap<String, double[][]> TAPERS = new ConcurrentHashMap<>();
+
+    private int l;
+    private int n;
+    private int nbTapers;
+    private int nbBins;
+    private double[] f;
+    private double[] scale;
+    private double[][] tapers;
+
+    // Scratch for the calling thread (worker threads of the batched
+    // computePSD use FFTPlanCache.scratch())
+    private double[] Y;
+    private int parallelThreshold = 1 << 15; // e.g. 32 channels x 4 tapers x 256 points
+
+    // Periodogram of each (channel, taper) pair, and mean of each channel,
+    // for the batched computePSD
+    private double[][] spectra = new double[0][];
+    private double[] means = new double[0];
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public MultitaperPSD(int inputLength, int fftLength, double samplingFrequency, double NW, int K) {
+
+        if (fftLength < inputLength) {
+            throw new IllegalArgumentException("fftLength (" + fftLength + ") must be at least inputLength (" + inputLength + ").");
+        }
+
+        l = inputLength;
+        n = fftLength;
+        nbTapers = K;
+        nbBins = n/2 + 1;
+        tapers = tapers(l, NW, K);
+
+        f = new double[nbBins];
+        for (int k = 0; k < nbBins; k++) {
+            f[k] = samplingFrequency*k/n;
+        }
+
+        // Unit-energy tapers: |X|^2/fs is a density; fold negative
+        // frequencies onto positive ones, and average over tapers
+        scale = new double[nbBins];
+        Arrays.fill(scale, 2./(samplingFrequency*K));
+        scale[0] /= 2;
+        if (n % 2 == 0) {
+            scale[nbBins - 1] /= 2;
+        }
+
+        Y = new double[n];
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public double[] computePSD(double[] x, double[] out) {
+        // Multitaper PSD of x [inputLength] into `out` [nbBins]
+
+        Arrays.fill(out, 0.);
+        double mean = mean(x);
+        for (int k = 0; k < nbTapers; k++) {
+            taperedPeriodogram(x, mean, k, out, Y);
+        }
+        return out;
+
+    }
+
+    public double[][] computePSD(double[][] xChMajor, double[][] out) {
+        // Multitaper PSD of every channel of `xChMajor` [nbCh,inputLength]
+        // into `out` [nbCh,nbBins].
+        //
+        // If nbCh*K*fftLength is at least the parallel threshold and there
+        // is more than one core, the nbCh*K tapered FFTs are split across the
+        // common ForkJoin pool (as in FFT.computeLogPSD), each into its own
+        // row of a buffer kept between calls, then summed per channel;
+        // otherwise channels are processed in turn on the calling thread.
+
+        int nbCh = xChMajor.length;
+        if ((long)nbCh*nbTapers*n >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            if (spectra.length < nbCh*nbTapers) {
+                spectra = new double[nbCh*nbTapers][nbBins];
+                means = new double[nbCh];
+            }
+            for (int c = 0; c < nbCh; c++) {
+                means[c] = mean(xChMajor[c]);
+            }
+            IntStream.range(0, nbCh*nbTapers).parallel().forEach(j -> {
+                int c = j/nbTapers;
+                Arrays.fill(spectra[j], 0.);
+                taperedPeriodogram(xChMajor[c], means[c], j % nbTapers, spectra[j], FFTPlanCache.scratch(n));
+            });
+            for (int c = 0; c < nbCh; c++) {
+                double[] o = out[c];
+                System.arraycopy(spectra[c*nbTapers], 0, o, 0, nbBins);
+                for (int k = 1; k < nbTapers; k++) {
+                    double[] s = spectra[c*nbTapers + k];
+                    for (int i = 0; i < nbBins; i++) {
+                        o[i] += s[i];
+                    }
+                }
+            }
+        } else {
+            for (int c = 0; c < nbCh; c++) {
+                computePSD(xChMajor[c], out[c]);
+            }
+        }
+        return out;
+
+    }
+
+    public double[][] computeLogPSD(double[][] xChMajor, double[][] out) {
+        // log10 of computePSD(xChMajor, out)
+        computePSD(xChMajor, out);
+        for (double[] o: out) {
+            for (int i = 0; i < nbBins; i++) {
+                o[i] = Math.log10(o[i]);
+            }
+        }
+        return out;
+    }
+
+    private double mean(double[] x) {
+        if (x.length != l) {
+            throw new IllegalArgumentException("Input has " + x.length + " elements instead of " + l + ".");
+        }
+        double mean = 0;
+        for (double a: x) {
+            mean += a;
+        }
+        return mean/l;
+    }
+
+    private void taperedPeriodogram(double[] x, double mean, int k, double[] out, double[] Y) {
+        // Add the scaled periodogram of x (mean removed) tapered by taper k
+        // to `out`, using the scratch array `Y`
+
+        double[] taper = tapers[k];
+        for (int i = 0; i < l; i++) {
+            Y[i] = taper[i]*(x[i] - mean);
+        }
+        Arrays.fill(Y, l, n, 0.);
+
+        FFTPlanCache.get(n).realForward(Y);
+
+        FFT.packedPower(Y, n, scale, out, true);
+
+    }
+
+    public static double[][] getTapers(int N, double NW, int K) {
+        // Copy of the first K DPSS tapers [K,N] of length N
+        double[][] shared = tapers(N, NW, K);
+        double[][] copy = new double[K][];
+        for (int k = 0; k < K; k++) {
+            copy[k] = shared[k].clone();
+        }
+        return copy;
+    }
+
+    private static double[][] tapers(int N, double NW, int K) {
+        // Shared tapers, computed on the first call for these parameters
+        return TAPERS.computeIfAbsent(N + " " + NW + " " + K, key -> dpss(N, NW, K));
+    }
+
+    private static double[][] dpss(int N, double NW, int K) {
+
+        if (K < 1 || K > N) {
+            throw new IllegalArgumentException("Number of tapers must be between 1 and " + N + ".");
+        }
+
+        double W = NW/N;
+        DenseMatrix64F A = new DenseMatrix64F(N, N);
+        for (int i = 0; i < N; i++) {
+            double d = (N - 1 - 2.*i)/2;
+            A.set(i, i, d*d*Math.cos(2*Math.PI*W));
+            if (i > 0) {
+                A.set(i, i - 1, i*(N - i)/2.);
+                A.set(i - 1, i, i*(N - i)/2.);
+            }
+        }
+
+        EigenDecomposition<DenseMatrix64F> eig = DecompositionFactory.eig(N, true, true);
+        if (!eig.decompose(A)) {
+            throw new IllegalStateException("DPSS eigen decomposition failed for N = " + N + ", NW = " + NW + ".");
+        }
+
+        // Indices of the K largest eigenvalues, in decreasing order
+        Integer[] order = new Integer[N];
+        for (int i = 0; i < N; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(eig.getEigenvalue(b).getReal(), eig.getEigenvalue(a).getReal()));
+
+        double[][] tapers = new double[K][N];
+        for (int k = 0; k < K; k++) {
+            DenseMatrix64F v = eig.getEigenVector(order[k]);
+            double energy = 0;
+            for (int i = 0; i < N; i++) {
+                tapers[k][i] = v.get(i);
+                energy += tapers[k][i]*tapers[k][i];
+            }
+
+            // Unit energy, then scipy's sign convention: positive sum for
+            // symmetric tapers, and for antisymmetric ones a positive first
+            // sample above the numerical noise
+            double norm = 1/Math.sqrt(energy);
+            for (int i = 0; i < N; i++) {
+                tapers[k][i] *= norm;
+            }
+            boolean flip = false;
+            if (k % 2 == 0) {
+                double sum = 0;
+                for (double t: tapers[k]) {
+                    sum += t;
+                }
+                flip = sum < 0;
+            } else {
+                double threshold = Math.max(1e-7, 1./N);
+                for (double t: tapers[k]) {
+                    if (t*t > threshold) {
+                        flip = t < 0;
+                        break;
+                    }
+                }
+            }
+            if (flip) {
+                for (int i = 0; i < N; i++) {
+                    tapers[k][i] = -tapers[k][i];
+                }
+            }
+        }
+        return tapers;
+
+    }
+
+    public static double concentration(double[] taper, double NW) {
+        // Fraction of the energy of `taper` in the band [-W, W], W = NW/N
+        // (close to 1 for the first 2*NW - 1 DPSS tapers)
+
+        int N = taper.length;
+        double W = NW/N;
+        double energy = 0;
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double kernel = (i == j) ? 2*W : Math.sin(2*Math.PI*W*(i - j))/(Math.PI*(i - j));
+                energy += taper[i]*kernel*taper[j];
+            }
+        }
+        return energy;
+
+    }
+
+    public void setParallelThreshold(int nbPoints) {
+        // Smallest nbCh*K*fftLength for which computePSD(double[][],
+        // double[][]) runs in parallel (Integer.MAX_VALUE to never do it)
+        parallelThreshold = nbPoints;
+    }
+
+    public double[] getFreqBins() {
+        return f;
+    }
+
+    public int getNbBins() {
+        return nbBins;
+    }
+
+    public int getNbTapers() {
+        return nbTapers;
+    }
+
+    public static void main(String[] args) {
+
+        int N = 256;
+        double NW = 3;
+        int K = 5;
+
+        long startTime = System.nanoTime();
+        double[][] tapers = tapers(N, NW, K);
+        long firstTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        tapers(N, NW, K);
+        System.out.println("DPSS (" + N + ", " + NW + ", " + K + "): " + firstTime/1000 + " us, then "
+            + (System.nanoTime() - startTime)/1000 + " us from the cache");
+
+        for (int k = 0; k < K; k++) {
+            double maxDot = 0;
+            for (int j = 0; j < K; j++) {
+                double dot = 0;
+                for (int i = 0; i < N; i++) {
+                    dot += tapers[k][i]*tapers[j][i];
+                }
+                maxDot = Math.max(maxDot, Math.abs(dot - (j == k ? 1 : 0)));
+            }
+            System.out.println("Taper " + k + ": concentration " + concentration(tapers[k], NW)
+                + ", max deviation from orthonormality " + maxDot);
+        }
+
+        // A 20 Hz sine of amplitude A has a power of A^2/2
+        double fs = 256.;
+        double amp = 5.;
+        double[] x = new double[N];
+        for (int i = 0; i < N; i++) {
+            x[i] = amp*Math.sin(2*Math.PI*20*i/fs) + 100.;
+        }
+        MultitaperPSD mt = new MultitaperPSD(N, N, fs, NW, K);
+        double[] psd = mt.computePSD(x, new double[mt.getNbBins()]);
+        double power = 0;
+        for (double p: psd) {
+            power += p*fs/N;
+        }
+        System.out.println("Power of a 20 Hz sine: " + power + " (expected " + amp*amp/2 + ")");
+
+    }
+
+}
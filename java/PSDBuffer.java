@@ -1,56 +1,246 @@
 import java.util.Arrays; // For printing arrays when debugging
+import java.util.Random;
 
-public class PSDBuffer extends CircBuffer2D {
+public class PSDBuffer extends CircBuffer2D implements PSDSmoother {
     // This class extends CircBuffer2D to expose PSD-specific methods
     // such as noise marking in a joined buffer, and mean across epochs
+    //
+    // With `useFloat`, PSD epochs are stored as floats (see CircBuffer2D).
+    //
+    // The mean is maintained incrementally: a running sum and a per-channel
+    // count of clean epochs are updated when an epoch enters or leaves the
+    // buffer, so mean() is O(nbCh*nbBins) instead of a full rescan. Epochs
+    // are copied into CircBuffer2D's flat storage, so the evicted values are
+    // exactly those that were added. The sums are recomputed from scratch
+    // every RESYNC_PERIOD updates to keep rounding errors from accumulating.
+    //
+    // Robust aggregates (median(), percentile()) are available after calling
+    // enableOrderStatistics(): the clean values of each channel and bin are
+    // then kept sorted in a SlidingOrderStatistics structure, updated in
+    // O(log bufferLength) per value when an epoch enters or leaves.
 	
+    private static final int RESYNC_PERIOD = 1024;
+
     private boolean[][] noiseBuffer;
+    private double[][] sum;
+    private int[] nbPointsSummed;
+    private double[][] bufferMean;
+    private int nbEpochs;
+    private int nbUpdatesSinceResync;
+    private boolean[] noNoise;
+    private SlidingOrderStatistics orderStats;
+    private double[][] bufferPercentile;
 
 	public PSDBuffer(int n, int m, int l) {
 
-        super(n,m,l);
+        this(n,m,l,false);
+
+    }
+
+	public PSDBuffer(int n, int m, int l, boolean useFloat) {
+
+        super(n,m,l,useFloat);
         noiseBuffer = new boolean[bufferLength][nbCh];
+        sum = new double[nbCh][nbBins];
+        nbPointsSummed = new int[nbCh];
+        bufferMean = new double[nbCh][nbBins];
+        noNoise = new boolean[nbCh];
 
     }
 
     public void update(double[][] newData, boolean[] noise) {
+        // Write a new epoch [nbCh,nbBins] in the buffer. Channels for which
+        // `noise` is true are kept in the buffer but not used in mean().
+
+        int i = index;
 
-        noiseBuffer[index] = noise; // update noise detection
+        // Remove the evicted epoch from the running sum
+        if (nbEpochs == bufferLength) {
+            addToSum(i, -1);
+            if (orderStats != null) {
+                removeFromOrderStats(i);
+            }
+        } else {
+            nbEpochs++;
+        }
+
+        System.arraycopy(noise, 0, noiseBuffer[i], 0, nbCh); // update noise detection
         super.update(newData);
 
+        // Add the new epoch, as stored, to the running sum
+        if (++nbUpdatesSinceResync >= RESYNC_PERIOD) {
+            resync();
+        } else {
+            addToSum(i, 1);
+        }
+        if (orderStats != null) {
+            addToOrderStats(i);
+        }
+
     }
 
     public void update(double[][] newData) {
 
-        this.update(newData, new boolean[nbCh]);
+        this.update(newData, noNoise);
 
     }
 
     public double[][] mean() {
         // Compute the mean of the buffer across epochs (1st dimension of `buffer`).
         // Don't use epochs and/or channels that are marked as bad in noiseBuffer.
+        //
+        // The returned array is reused by the next call to mean().
 
-        double[][] bufferMean = new double[nbCh][nbBins];
-        double[] nbPointsSummed = new double[nbCh];
+        return mean(bufferMean);
 
-        for (int i = 0; i <  bufferLength; i++) {
-            for (int c = 0; c <  nbCh; c++) { 
-                if (noiseBuffer[i][c]) {
-                    nbPointsSummed[c]++;
-                    for (int n = 0; n <  nbBins; n++) {
-                        bufferMean[c][n] += buffer[i][c][n];
-                    }
-                }
+    }
+
+    public double[][] mean(double[][] out) {
+        // Same as mean(), but writes into `out` [nbCh,nbBins].
+        // A channel with no clean epoch gets NaN.
+
+        for (int c = 0; c <  nbCh; c++) {
+            double count = nbPointsSummed[c];
+            for (int n = 0; n <  nbBins; n++) {
+                out[c][n] = sum[c][n]/count;
             }
         }
 
-        for (int c = 0; c <  nbCh; c++) { 
-            for (int n = 0; n <  nbBins; n++) {
-                bufferMean[c][n] /= nbPointsSummed[c];
+        return out;
+
+    }
+
+    public void enableOrderStatistics() {
+        // Start maintaining the sorted values needed by median() and
+        // percentile(), from the epochs already in the buffer.
+
+        if (orderStats != null) {
+            return;
+        }
+        orderStats = new SlidingOrderStatistics(nbCh*nbBins, bufferLength);
+        bufferPercentile = new double[nbCh][nbBins];
+        for (int i = 0; i < nbEpochs; i++) {
+            addToOrderStats(i);
+        }
+
+    }
+
+    public double[][] median() {
+        // Median of the clean epochs, for each channel and bin.
+        // The returned array is reused by the next call to median() or percentile().
+
+        return percentile(50, bufferPercentile);
+
+    }
+
+    public double[][] percentile(double q) {
+        // q-th percentile (0 <= q <= 100) of the clean epochs, for each
+        // channel and bin. The returned array is reused by the next call.
+
+        return percentile(q, bufferPercentile);
+
+    }
+
+    public double[][] percentile(double q, double[][] out) {
+        // Same as percentile(q), but writes into `out` [nbCh,nbBins].
+        // Values are linearly interpolated between order statistics (as
+        // numpy.percentile does). A channel with no clean epoch gets NaN.
+
+        if (orderStats == null) {
+            throw new IllegalStateException("Call enableOrderStatistics() first.");
+        }
+        if (q < 0 || q > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+
+        for (int c = 0; c < nbCh; c++) {
+            int count = orderStats.size(c*nbBins);
+            if (count == 0) {
+                Arrays.fill(out[c], Double.NaN);
+                continue;
+            }
+            double pos = q/100*(count - 1);
+            int lo = (int) pos;
+            int hi = Math.min(lo + 1, count - 1);
+            double frac = pos - lo;
+            for (int n = 0; n < nbBins; n++) {
+                int tree = c*nbBins + n;
+                double vLo = orderStats.select(tree, lo);
+                out[c][n] = (frac == 0) ? vLo : vLo + frac*(orderStats.select(tree, hi) - vLo);
             }
         }
 
-        return bufferMean;
+        return out;
+
+    }
+
+    private void addToOrderStats(int i) {
+        // Insert the clean channels of the epoch in buffer slot `i`
+
+        int offset = i*epochStride;
+        for (int c = 0; c < nbCh; c++, offset += nbBins) {
+            if (noiseBuffer[i][c]) {
+                continue;
+            }
+            for (int n = 0; n < nbBins; n++) {
+                double value = (floatBuffer != null) ? floatBuffer[offset + n] : buffer[offset + n];
+                orderStats.insert(c*nbBins + n, i, value);
+            }
+        }
+
+    }
+
+    private void removeFromOrderStats(int i) {
+        // Remove the clean channels of the epoch in buffer slot `i`
+
+        for (int c = 0; c < nbCh; c++) {
+            if (noiseBuffer[i][c]) {
+                continue;
+            }
+            for (int n = 0; n < nbBins; n++) {
+                orderStats.remove(c*nbBins + n, i);
+            }
+        }
+
+    }
+
+    private void resync() {
+        // Recompute the running sums from the stored epochs
+
+        nbUpdatesSinceResync = 0;
+        for (int c = 0; c <  nbCh; c++) {
+            nbPointsSummed[c] = 0;
+            Arrays.fill(sum[c], 0.);
+        }
+
+        for (int i = 0; i <  nbEpochs; i++) {
+            addToSum(i, 1);
+        }
+
+    }
+
+    private void addToSum(int i, int sign) {
+        // Add (sign = 1) or remove (sign = -1) the clean channels of the
+        // epoch in buffer slot `i` to/from the running sum. The epoch is
+        // read as one contiguous run of the backing array.
+
+        int offset = i*epochStride;
+        for (int c = 0; c <  nbCh; c++, offset += nbBins) {
+            if (noiseBuffer[i][c]) {
+                continue;
+            }
+            nbPointsSummed[c] += sign;
+            double[] sumCh = sum[c];
+            if (floatBuffer != null) {
+                for (int n = 0; n <  nbBins; n++) {
+                    sumCh[n] += sign*floatBuffer[offset + n];
+                }
+            } else {
+                for (int n = 0; n <  nbBins; n++) {
+                    sumCh[n] += sign*buffer[offset + n];
+                }
+            }
+        }
 
     }
 
@@ -87,6 +277,72 @@ public class PSDBuffer extends CircBuffer2D {
         double[][] bufferMean = testBuffer.mean();
         System.out.println(Arrays.deepToString(bufferMean));
 
+        // Compare the running mean and median with a full rescan after many random updates
+        testBuffer.enableOrderStatistics();
+        Random rng = new Random(0);
+        double[][] epoch = new double[testNbCh][testNbBins];
+        boolean[] noise = new boolean[testNbCh];
+        for (int i = 0; i < 5000; i++) {
+            for (int c = 0; c < testNbCh; c++) {
+                noise[c] = rng.nextDouble() < 0.2;
+                for (int n = 0; n < testNbBins; n++) {
+                    epoch[c][n] = rng.nextGaussian();
+                }
+            }
+            testBuffer.update(epoch, noise); // `epoch` is reused on purpose
+        }
+        double[][] expectedMean = new double[testNbCh][testNbBins];
+        int[] count = new int[testNbCh];
+        for (int i = 0; i < testBufferLength; i++) {
+            for (int c = 0; c < testNbCh; c++) {
+                if (!testBuffer.noiseBuffer[i][c]) {
+                    count[c]++;
+                    for (int n = 0; n < testNbBins; n++) {
+                        expectedMean[c][n] += testBuffer.buffer[i*testBuffer.epochStride + c*testNbBins + n];
+                    }
+                }
+            }
+        }
+        double maxDiff = 0;
+        bufferMean = testBuffer.mean();
+        for (int c = 0; c < testNbCh; c++) {
+            for (int n = 0; n < testNbBins; n++) {
+                maxDiff = Math.max(maxDiff, Math.abs(bufferMean[c][n] - expectedMean[c][n]/count[c]));
+            }
+        }
+        System.out.println("Max abs difference with full rescan: " + maxDiff);
+
+        double[][] median = testBuffer.median();
+        int nbMedianErrors = 0;
+        for (int c = 0; c < testNbCh; c++) {
+            for (int n = 0; n < testNbBins; n++) {
+                double[] clean = new double[count[c]];
+                for (int i = 0, k = 0; i < testBufferLength; i++) {
+                    if (!testBuffer.noiseBuffer[i][c]) {
+                        clean[k++] = testBuffer.buffer[i*testBuffer.epochStride + c*testNbBins + n];
+                    }
+                }
+                Arrays.sort(clean);
+                double expected = (clean.length % 2 == 1) ? clean[clean.length/2]
+                    : (clean[clean.length/2 - 1] + clean[clean.length/2])/2;
+                if (Math.abs(median[c][n] - expected) > 1e-12) {
+                    nbMedianErrors++;
+                }
+            }
+        }
+        System.out.println("Median errors: " + nbMedianErrors);
+
+        // Median is robust to an artefact that the noise detector missed
+        PSDBuffer robustBuffer = new PSDBuffer(testBufferLength,1,1);
+        robustBuffer.enableOrderStatistics();
+        double[][] fakePSD = new double[1][1];
+        for (int i = 0; i < testBufferLength; i++) {
+            fakePSD[0][0] = (i == 2) ? 100 : i;
+            robustBuffer.update(fakePSD);
+        }
+        System.out.println("Mean: " + robustBuffer.mean()[0][0] + ", median: " + robustBuffer.median()[0][0]
+            + ", 25th percentile: " + robustBuffer.percentile(25)[0][0]);
+
 
     }
 
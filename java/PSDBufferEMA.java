@@ -0,0 +1,112 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+public class PSDBufferEMA implements PSDSmoother {
+    // This class smooths successive log-PSD epochs with an exponential
+    // moving average, as an alternative to PSDBuffer's mean across epochs.
+    //
+    // Only one [nbCh,nbBins] state is kept, whatever the time constant, so
+    // memory is O(nbCh*nbBins) instead of O(bufferLength*nbCh*nbBins).
+    //
+    // Args:
+    //  timeConstant (double) : time constant of the average, in number of
+    //      updates (e.g. 20 updates at 10 Hz for a 2-s time constant)
+    //  nbCh (int) : number of channels
+    //  nbBins (int) : number of frequency bins
+    //
+    // Noise-flagged channels leave the state untouched. The first clean
+    // epoch of each channel initializes its state, so there is no bias
+    // towards zero at startup; channels that never had a clean epoch are NaN.
+
+    private int nbCh;
+    private int nbBins;
+    private double alpha;
+    private double[][] state;
+    private boolean[] initialized;
+    private boolean[] noNoise;
+
+    public PSDBufferEMA(double timeConstant, int m, int l) {
+
+        nbCh = m;
+        nbBins = l;
+        alpha = 1 - Math.exp(-1./timeConstant);
+
+        state = new double[nbCh][nbBins];
+        initialized = new boolean[nbCh];
+        noNoise = new boolean[nbCh];
+
+    }
+
+    public void update(double[][] newData, boolean[] noise) {
+
+        for (int c = 0; c < nbCh; c++) {
+            if (noise[c]) {
+                continue;
+            }
+            if (initialized[c]) {
+                for (int n = 0; n < nbBins; n++) {
+                    state[c][n] += alpha*(newData[c][n] - state[c][n]);
+                }
+            } else {
+                System.arraycopy(newData[c], 0, state[c], 0, nbBins);
+                initialized[c] = true;
+            }
+        }
+
+    }
+
+    public void update(double[][] newData) {
+
+        this.update(newData, noNoise);
+
+    }
+
+    public double[][] mean() {
+        // Return the current smoothed epoch. The returned array is the
+        // internal state: it is updated in place by the next update().
+
+        for (int c = 0; c < nbCh; c++) {
+            if (!initialized[c]) {
+                Arrays.fill(state[c], Double.NaN);
+            }
+        }
+        return state;
+
+    }
+
+    public double[][] mean(double[][] out) {
+
+        for (int c = 0; c < nbCh; c++) {
+            if (initialized[c]) {
+                System.arraycopy(state[c], 0, out[c], 0, nbBins);
+            } else {
+                Arrays.fill(out[c], Double.NaN);
+            }
+        }
+        return out;
+
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public static void main(String[] args) {
+
+        int testNbCh = 2;
+        int testNbBins = 3;
+        PSDBufferEMA testBuffer = new PSDBufferEMA(5., testNbCh, testNbBins);
+
+        // Step from 0 to 1: the average should reach ~63% after `timeConstant` updates
+        testBuffer.update(new double[][]{{0,0,0}, {0,0,0}});
+        for (int i = 0; i < 5; i++) {
+            testBuffer.update(new double[][]{{1,1,1}, {1,1,1}});
+        }
+        System.out.println(Arrays.deepToString(testBuffer.mean()));
+
+        // Noisy epochs on channel 1 are ignored
+        testBuffer.update(new double[][]{{1,1,1}, {100,100,100}}, new boolean[]{false,true});
+        System.out.println(Arrays.deepToString(testBuffer.mean()));
+
+    }
+
+}
@@ -0,0 +1,82 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+public class PSDBufferWelch extends PSDBuffer {
+    // This class implements Welch-style smoothing of log-PSD epochs: the
+    // last K epochs (overlapping segments) are averaged in linear power,
+    // and the log10 of the average is returned.
+    //
+    // PSDBuffer averages log-PSDs directly, which is a geometric mean of the
+    // powers; this class gives the usual (arithmetic) Welch estimate. Memory
+    // is bounded by K, so K can be kept much smaller than a PSDBuffer's
+    // `bufferLength`.
+    //
+    // Args:
+    //  K (int) : number of segments to average
+    //  nbCh (int) : number of channels
+    //  nbBins (int) : number of frequency bins
+
+    private double[][] linearPower;
+
+    public PSDBufferWelch(int K, int m, int l) {
+
+        super(K,m,l);
+        linearPower = new double[nbCh][nbBins];
+
+    }
+
+    public void update(double[][] newData, boolean[] noise) {
+        // `newData` is a log10-PSD epoch [nbCh,nbBins]
+
+        for (int c = 0; c < nbCh; c++) {
+            for (int n = 0; n < nbBins; n++) {
+                linearPower[c][n] = Math.pow(10, newData[c][n]);
+            }
+        }
+        super.update(linearPower, noise);
+
+    }
+
+    public double[][] mean(double[][] out) {
+        // Log10 of the mean linear power of the last K clean segments
+
+        super.mean(out);
+        for (int c = 0; c < nbCh; c++) {
+            for (int n = 0; n < nbBins; n++) {
+                out[c][n] = Math.log10(out[c][n]);
+            }
+        }
+        return out;
+
+    }
+
+    public double[][] percentile(double q, double[][] out) {
+        // Log10 of the percentile of linear power (see PSDBuffer.percentile())
+
+        super.percentile(q, out);
+        for (int c = 0; c < nbCh; c++) {
+            for (int n = 0; n < nbBins; n++) {
+                out[c][n] = Math.log10(out[c][n]);
+            }
+        }
+        return out;
+
+    }
+
+    public static void main(String[] args) {
+
+        int testNbCh = 2;
+        int testNbBins = 3;
+        PSDBufferWelch testBuffer = new PSDBufferWelch(2, testNbCh, testNbBins);
+
+        // Mean of powers 10 and 1000 is 505, i.e. log10 = 2.703
+        testBuffer.update(new double[][]{{1,1,1}, {1,1,1}});
+        testBuffer.update(new double[][]{{3,3,3}, {3,3,3}});
+        System.out.println(Arrays.deepToString(testBuffer.mean()));
+
+        // Oldest segment is evicted; noisy segment on channel 1 is ignored
+        testBuffer.update(new double[][]{{3,3,3}, {9,9,9}}, new boolean[]{false,true});
+        System.out.println(Arrays.deepToString(testBuffer.mean()));
+
+    }
+
+}
@@ -0,0 +1,18 @@
+public interface PSDSmoother {
+    // Common API of the engines that smooth successive PSD epochs
+    // [nbCh,nbBins] over time:
+    //  PSDBuffer: mean of the last `bufferLength` log-PSD epochs
+    //  PSDBufferWelch: Welch-style mean of the last K epochs, in linear power
+    //  PSDBufferEMA: exponential moving average, O(nbCh*nbBins) memory
+    //
+    // Channels flagged in `noise` are not used for smoothing.
+
+    public void update(double[][] newData, boolean[] noise);
+
+    public void update(double[][] newData);
+
+    public double[][] mean();
+
+    public double[][] mean(double[][] out);
+
+}
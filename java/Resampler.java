@@ -0,0 +1,194 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+// Implements streaming polyphase decimation and rational resampling
+public class Resampler {
+    // Changes the sampling rate of a multichannel stream by a rational
+    // factor up/down (e.g. 1/2 to decimate by 2, 5/11 to go from 220 Hz to
+    // 100 Hz), so that later stages (CircBuffer, FFT, NoiseDetector) run on
+    // fewer samples. It sits between Filter and CircBuffer.
+    //
+    // Resampling is equivalent to inserting up-1 zeros between samples,
+    // lowpass filtering (anti-aliasing/anti-imaging FIR) at the upsampled
+    // rate, then keeping one sample out of `down`. Here the FIR is split in
+    // `up` polyphase branches and only the branch needed by each kept output
+    // is evaluated, on the input samples only: no zero and no discarded
+    // output is ever multiplied.
+    //
+    // Input blocks of any length are accepted; the number of outputs per
+    // block varies and is returned by process().
+    //
+    // Args:
+    //  up (int) : interpolation factor
+    //  down (int) : decimation factor
+    //  nbCh (int) : number of channels
+    //  taps (double[]) : lowpass FIR at the upsampled rate, with unit DC gain
+    //      (default: FilterFIR.design() with a cutoff at 80% of the lowest
+    //      Nyquist frequency and 20*max(up, down)+1 taps)
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private int up;
+    private int down;
+    private int nbCh;
+    private int nbTaps;
+    private int branchLength;
+    private double[][] branches;
+
+    private double[][] history;
+    private int head;
+    private int acc;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public Resampler(int upFactor, int downFactor, int nbChannels) {
+        this(upFactor, downFactor, nbChannels, defaultTaps(upFactor, downFactor));
+    }
+
+    public Resampler(int upFactor, int downFactor, int nbChannels, double[] taps) {
+
+        up = upFactor;
+        down = downFactor;
+        nbCh = nbChannels;
+        nbTaps = taps.length;
+
+        // Branch p holds taps p, p+up, p+2*up, ..., scaled by `up` to make
+        // up for the inserted zeros
+        branchLength = (nbTaps + up - 1)/up;
+        branches = new double[up][branchLength];
+        for (int i = 0; i < nbTaps; i++) {
+            branches[i % up][i/up] = up*taps[i];
+        }
+
+        // Last branchLength input samples of each channel, stored twice so
+        // that they can always be read as one contiguous run
+        history = new double[nbCh][2*branchLength];
+        head = 0;
+        acc = 0;
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public int process(double[][] in, double[][] out) {
+        // Resample a block `in` [nbSamples,nbCh] into `out`, which must have
+        // at least getMaxOutputLength(nbSamples) rows of nbCh values.
+        // Returns the number of output rows written.
+
+        int nbOut = 0;
+
+        for (int n = 0; n < in.length; n++) {
+
+            // Push the new sample; the most recent sample is at index head
+            // (and head + branchLength)
+            head = (head == 0) ? branchLength - 1 : head - 1;
+            double[] x = in[n];
+            for (int c = 0; c < nbCh; c++) {
+                history[c][head] = x[c];
+                history[c][head + branchLength] = x[c];
+            }
+
+            // Outputs whose position on the upsampled grid falls between
+            // this input sample and the next one
+            while (acc < up) {
+                double[] h = branches[acc];
+                double[] y = out[nbOut++];
+                for (int c = 0; c < nbCh; c++) {
+                    double[] hist = history[c];
+                    double sum = 0;
+                    for (int k = 0; k < branchLength; k++) {
+                        sum += h[k]*hist[head + k];
+                    }
+                    y[c] = sum;
+                }
+                acc += down;
+            }
+            acc -= up;
+        }
+
+        return nbOut;
+
+    }
+
+    public int getMaxOutputLength(int nbSamples) {
+        return (int)(((long)nbSamples*up + down - 1)/down) + 1;
+    }
+
+    public double getOutputRate(double samplingFrequency) {
+        return samplingFrequency*up/down;
+    }
+
+    public double getDelay() {
+        // Group delay of the linear-phase FIR, in output samples
+        return (nbTaps - 1)/2./down;
+    }
+
+    public void reset() {
+        for (int c = 0; c < nbCh; c++) {
+            Arrays.fill(history[c], 0.);
+        }
+        head = 0;
+        acc = 0;
+    }
+
+    private static double[] defaultTaps(int up, int down) {
+        // Lowpass at the upsampled rate (taken as `up`, i.e. input rate 1)
+        int nbTaps = 20*Math.max(up, down) + 1;
+        double cutoff = 0.8*0.5*Math.min(1., (double)up/down);
+        return FilterFIR.design(up, "lowpass", nbTaps, cutoff, 0);
+    }
+
+    public static void main(String[] args) {
+
+        // 1. Raw samples at 220 Hz -> Filter -> 2/5 resampling -> CircBuffer at 88 Hz
+        double fs = 220.;
+        int nbCh = 4;
+        double[][] fakeSignal = Filter.generateFakeSignal(10, nbCh, fs);
+        Filter bpFilt = new Filter(fs, "bandpass", 5, 2, 36);
+        double[][] z = new double[nbCh][bpFilt.getNB()];
+        Resampler resampler = new Resampler(2, 5, nbCh);
+        CircBuffer buffer = new CircBuffer((int)resampler.getOutputRate(fs), nbCh);
+
+        int blockLength = 12;
+        double[][] block = new double[blockLength][nbCh];
+        double[][] resampled = new double[resampler.getMaxOutputLength(blockLength)][nbCh];
+        int nbOut = 0;
+        for (int i = 0; i + blockLength <= fakeSignal.length; i += blockLength) {
+            for (int n = 0; n < blockLength; n++) {
+                z = bpFilt.transform(fakeSignal[i + n], z);
+                block[n] = Filter.extractFilteredSamples(z);
+            }
+            int len = resampler.process(block, resampled);
+            for (int n = 0; n < len; n++) {
+                buffer.update(resampled[n].clone());
+            }
+            nbOut += len;
+        }
+        System.out.println(fakeSignal.length + " samples at " + fs + " Hz -> " + nbOut + " samples at "
+            + resampler.getOutputRate(fs) + " Hz");
+
+        // 2. A sine below the new Nyquist frequency is preserved, up to the delay of the FIR
+        double f0 = 10.;
+        double[][] sine = new double[(int)(20*fs)][1];
+        for (int i = 0; i < sine.length; i++) {
+            sine[i][0] = Math.sin(2*Math.PI*f0*i/fs);
+        }
+        for (int[] factors: new int[][]{{1, 4}, {2, 5}, {3, 2}}) {
+            Resampler sineResampler = new Resampler(factors[0], factors[1], 1);
+            double[][] sineOut = new double[sineResampler.getMaxOutputLength(sine.length)][1];
+            int len = sineResampler.process(sine, sineOut);
+            double fsOut = sineResampler.getOutputRate(fs);
+            double maxDiff = 0;
+            for (int m = (int)fsOut; m < len; m++) {
+                double expected = Math.sin(2*Math.PI*f0*(m - sineResampler.getDelay())/fsOut);
+                maxDiff = Math.max(maxDiff, Math.abs(sineOut[m][0] - expected));
+            }
+            System.out.println("Max abs difference with a " + f0 + " Hz sine, resampled by " + factors[0] + "/"
+                + factors[1] + ": " + maxDiff);
+        }
+
+    }
+
+}
@@ -0,0 +1,321 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+// Implements an incremental (sliding DFT) version of FFT.computeLogPSD
+public class SlidingDFT {
+    // FFT.computeLogPSD recomputes the whole spectrum of the window every
+    // processing step, although most of the window did not change since the
+    // previous step. Here the spectrum is updated as each sample arrives, so
+    // that the work is spread evenly across samples and computeLogPSD() only
+    // has to take log10 of the current bins.
+    //
+    // The output is the same as FFT.computeLogPSD on the last inputLength
+    // samples: mean removed, Hamming window, fftLength-point DFT (zero-padded
+    // or truncated to the first fftLength samples of the window).
+    //
+    // The Hamming window is a sum of three complex exponentials,
+    //      w[i] = 0.54 - 0.23*e^{+j*2*pi*i/(L-1)} - 0.23*e^{-j*2*pi*i/(L-1)}
+    // so each windowed bin is a combination of three unwindowed sums
+    //      S(w) = sum_{i<m} x[t0+i]*e^{-j*w*i}
+    // at w = 2*pi*k/N and w = 2*pi*k/N -+ 2*pi/(L-1), with m = min(L, N).
+    // Each sum slides by one sample with one complex multiply-add:
+    //      S'(w) = (S(w) - x[t0])*e^{+j*w} + x[t0+m]*e^{-j*w*(m-1)}
+    // and the mean is removed by subtracting mean*DFT(w), as
+    // DFT(w*(x - mean)) = DFT(w*x) - mean*DFT(w).
+    //
+    // The recursion accumulates rounding errors (its rotations have a
+    // modulus of 1 only up to rounding), so bins are recomputed from the
+    // history one at a time, round-robin, one every `resyncInterval` samples
+    // (see setResyncInterval()), which keeps the extra work per sample small
+    // and constant.
+    //
+    // Args:
+    //  inputLength (int) : window length (number of samples)
+    //  fftLength (int) : FFT length, as in FFT
+    //  samplingFrequency (double) : sampling frequency, in Hz
+    //  nbCh (int) : number of channels
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private static final double[] HAMMING_WEIGHTS = {0.54, -0.23, -0.23};
+
+    private int l;
+    private int n;
+    private int m;
+    private int nbCh;
+    private int nbFftPoints;
+    private int nbSums;
+    private double[] f;
+
+    // Per sum j = s*nbFftPoints + k (s = 0: unmodulated, 1: -2*pi/(L-1),
+    // 2: +2*pi/(L-1)): rotation e^{+j*w} and weight e^{-j*w*(m-1)} of the
+    // entering sample
+    private double[] rotRe;
+    private double[] rotIm;
+    private double[] inRe;
+    private double[] inIm;
+
+    // DFT of the Hamming window, for mean removal
+    private double[] winRe;
+    private double[] winIm;
+
+    // Sums [nbCh][3*nbFftPoints] and window sums [nbCh]
+    private double[][] sumRe;
+    private double[][] sumIm;
+    private double[] total;
+
+    // Last l samples of each channel, stored twice so that the window can
+    // always be read as one contiguous run starting at `oldest`
+    private double[][] history;
+    private int oldest;
+
+    private int resyncInterval = 64;
+    private int resyncCount;
+    private int resyncBin;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public SlidingDFT(int inputLength, int fftLength, double samplingFrequency, int nbChannels) {
+
+        l = inputLength;
+        n = fftLength;
+        m = Math.min(l, n);
+        nbCh = nbChannels;
+        nbFftPoints = (n % 2 == 0) ? n/2 : n/2 + 1;
+        nbSums = 3*nbFftPoints;
+
+        f = new double[nbFftPoints];
+        for (int k = 0; k < nbFftPoints; k++) {
+            f[k] = samplingFrequency*k/n;
+        }
+
+        // DFT bin of each output point; as in FFT.computeLogPSD, for an even
+        // fftLength the last point holds bin n/2 (Nyquist)
+        int[] bins = new int[nbFftPoints];
+        for (int k = 0; k < nbFftPoints; k++) {
+            bins[k] = k;
+        }
+        if (n % 2 == 0) {
+            bins[nbFftPoints - 1] = n/2;
+        }
+
+        double modulation = 2*Math.PI/(l - 1);
+        rotRe = new double[nbSums];
+        rotIm = new double[nbSums];
+        inRe = new double[nbSums];
+        inIm = new double[nbSums];
+        for (int s = 0; s < 3; s++) {
+            for (int k = 0; k < nbFftPoints; k++) {
+                int j = s*nbFftPoints + k;
+                double omega = 2*Math.PI*bins[k]/n + (s == 1 ? -modulation : (s == 2 ? modulation : 0));
+                rotRe[j] = Math.cos(omega);
+                rotIm[j] = Math.sin(omega);
+                inRe[j] = Math.cos(omega*(m - 1));
+                inIm[j] = -Math.sin(omega*(m - 1));
+            }
+        }
+
+        winRe = new double[nbFftPoints];
+        winIm = new double[nbFftPoints];
+        for (int k = 0; k < nbFftPoints; k++) {
+            for (int i = 0; i < m; i++) {
+                double w = 0.54 - 0.46*Math.cos(2*Math.PI*i/(l - 1));
+                winRe[k] += w*Math.cos(2*Math.PI*bins[k]*i/n);
+                winIm[k] -= w*Math.sin(2*Math.PI*bins[k]*i/n);
+            }
+        }
+
+        sumRe = new double[nbCh][nbSums];
+        sumIm = new double[nbCh][nbSums];
+        total = new double[nbCh];
+        history = new double[nbCh][2*l];
+        oldest = 0;
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public void update(double[] x) {
+        // Add one multichannel sample `x` [nbCh] to the window (the oldest
+        // sample leaves it)
+
+        for (int c = 0; c < nbCh; c++) {
+            double[] hist = history[c];
+            double leaving = hist[oldest];
+            hist[oldest] = x[c];
+            hist[oldest + l] = x[c];
+            total[c] += x[c] - leaving;
+
+            // Sample entering the first m samples of the window (the new
+            // sample itself unless the window is truncated)
+            double entering = hist[oldest + m];
+
+            double[] re = sumRe[c];
+            double[] im = sumIm[c];
+            for (int j = 0; j < nbSums; j++) {
+                double a = re[j] - leaving;
+                double b = im[j];
+                re[j] = a*rotRe[j] - b*rotIm[j] + entering*inRe[j];
+                im[j] = a*rotIm[j] + b*rotRe[j] + entering*inIm[j];
+            }
+        }
+        oldest = (oldest + 1 == l) ? 0 : oldest + 1;
+
+        if (resyncInterval > 0 && ++resyncCount >= resyncInterval) {
+            resyncCount = 0;
+            resyncBin(resyncBin);
+            resyncBin = (resyncBin + 1 == nbFftPoints) ? 0 : resyncBin + 1;
+        }
+
+    }
+
+    public void updateBlock(double[][] block) {
+        // Add a block of samples [nbSamples,nbCh]
+        for (double[] x: block) {
+            update(x);
+        }
+    }
+
+    public double[] computeLogPSD(int c, double[] out) {
+        // Compute log10(PSD) of channel c into `out` [nbFftPoints] and return
+        // it, as FFT.computeLogPSD on the current window
+
+        if (out.length != nbFftPoints) {
+            throw new IllegalArgumentException("Output has " + out.length + " elements instead of " + nbFftPoints + ".");
+        }
+
+        double[] re = sumRe[c];
+        double[] im = sumIm[c];
+        double mean = total[c]/l;
+        for (int k = 0; k < nbFftPoints; k++) {
+            double yRe = -mean*winRe[k];
+            double yIm = -mean*winIm[k];
+            for (int s = 0; s < 3; s++) {
+                yRe += HAMMING_WEIGHTS[s]*re[s*nbFftPoints + k];
+                yIm += HAMMING_WEIGHTS[s]*im[s*nbFftPoints + k];
+            }
+            out[k] = Math.log10(yRe*yRe + yIm*yIm);
+        }
+        return out;
+
+    }
+
+    public double[][] computeLogPSD(double[][] out) {
+        // Compute log10(PSD) of every channel into `out` [nbCh,nbFftPoints]
+        for (int c = 0; c < nbCh; c++) {
+            computeLogPSD(c, out[c]);
+        }
+        return out;
+    }
+
+    public void resync() {
+        // Recompute all bins (and window sums) from the history
+        for (int k = 0; k < nbFftPoints; k++) {
+            resyncBin(k);
+        }
+    }
+
+    private void resyncBin(int k) {
+        // Recompute the three sums of bin k of every channel from the
+        // history; the window sums are recomputed along with bin 0
+
+        for (int c = 0; c < nbCh; c++) {
+            double[] hist = history[c];
+            for (int s = 0; s < 3; s++) {
+                int j = s*nbFftPoints + k;
+                // e^{-j*w*i}, by recursion from i = 0 (m steps only)
+                double pRe = 1;
+                double pIm = 0;
+                double cRe = rotRe[j];
+                double cIm = -rotIm[j];
+                double re = 0;
+                double im = 0;
+                for (int i = 0; i < m; i++) {
+                    double v = hist[oldest + i];
+                    re += v*pRe;
+                    im += v*pIm;
+                    double t = pRe*cRe - pIm*cIm;
+                    pIm = pRe*cIm + pIm*cRe;
+                    pRe = t;
+                }
+                sumRe[c][j] = re;
+                sumIm[c][j] = im;
+            }
+            if (k == 0) {
+                double sum = 0;
+                for (int i = 0; i < l; i++) {
+                    sum += hist[oldest + i];
+                }
+                total[c] = sum;
+            }
+        }
+
+    }
+
+    public void setResyncInterval(int nbSamples) {
+        // Recompute one bin every `nbSamples` samples, so every bin is
+        // recomputed every nbSamples*nbFftPoints samples (0 to never do it)
+        resyncInterval = nbSamples;
+        resyncCount = 0;
+    }
+
+    public void reset() {
+        for (int c = 0; c < nbCh; c++) {
+            Arrays.fill(sumRe[c], 0.);
+            Arrays.fill(sumIm[c], 0.);
+            Arrays.fill(history[c], 0.);
+        }
+        Arrays.fill(total, 0.);
+        oldest = 0;
+        resyncCount = 0;
+        resyncBin = 0;
+    }
+
+    public double[] getFreqBins() {
+        return f;
+    }
+
+    public int getNbFftPoints() {
+        return nbFftPoints;
+    }
+
+    public static void main(String[] args) {
+
+        // Same window as TestProcessingPipeline, compared with FFT every step
+        double fs = 220.;
+        int nbCh = 4;
+        int windowLength = 220;
+        int step = (int)fs/10;
+        double[][] fakeSignal = Filter.generateFakeSignal(10, nbCh, fs);
+
+        for (int fftLength: new int[]{128, 220, 256}) {
+            SlidingDFT sdft = new SlidingDFT(windowLength, fftLength, fs, nbCh);
+            FFT fft = new FFT(windowLength, fftLength, fs);
+            CircBufferFlat buffer = new CircBufferFlat(windowLength, nbCh);
+            double[][] window = new double[nbCh][windowLength];
+            double[][] expected = new double[nbCh][fft.getNbFftPoints()];
+            double[][] logpower = new double[nbCh][sdft.getNbFftPoints()];
+
+            double maxDiff = 0;
+            for (int i = 0; i < fakeSignal.length; i++) {
+                buffer.update(fakeSignal[i]);
+                sdft.update(fakeSignal[i]);
+                if (i >= windowLength && i % step == 0) {
+                    buffer.extractTransposedInto(window);
+                    fft.computeLogPSD(window, expected);
+                    sdft.computeLogPSD(logpower);
+                    for (int c = 0; c < nbCh; c++) {
+                        for (int k = 0; k < logpower[c].length; k++) {
+                            maxDiff = Math.max(maxDiff, Math.abs(logpower[c][k] - expected[c][k]));
+                        }
+                    }
+                }
+            }
+            System.out.println("FFT length " + fftLength + ": max abs difference of log10(PSD) with FFT: " + maxDiff);
+        }
+
+    }
+
+}
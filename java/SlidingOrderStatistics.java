@@ -0,0 +1,221 @@
+import java.util.Arrays; // For printing arrays when debugging
+import java.util.Random;
+
+public class SlidingOrderStatistics {
+    // This class maintains many independent sliding windows of values
+    // (e.g. one per channel and frequency bin) in sorted order, so that
+    // order statistics (median, percentiles) can be queried without sorting.
+    //
+    // Each window is an order-statistic treap (a randomized balanced binary
+    // search tree where each node also stores the size of its subtree).
+    // Values are identified by a slot number in [0, nbSlots), e.g. the
+    // position of their epoch in a circular buffer, so that they can be
+    // evicted when the slot is overwritten. insert(), remove() and select()
+    // are O(log n) in the number of values in the window.
+    //
+    // All nodes live in flat primitive arrays indexed by
+    // tree*nbSlots + slot; no objects are allocated after construction.
+
+    private static final int NIL = -1;
+
+    private int nbTrees;
+    private int nbSlots;
+
+    private double[] values;
+    private int[] left;
+    private int[] right;
+    private int[] size;
+    private int[] priority;
+    private int[] root;
+
+    // Results of split()
+    private int splitLeft;
+    private int splitRight;
+
+    public SlidingOrderStatistics(int nbWindows, int windowLength) {
+
+        nbTrees = nbWindows;
+        nbSlots = windowLength;
+
+        values = new double[nbTrees*nbSlots];
+        left = new int[nbTrees*nbSlots];
+        right = new int[nbTrees*nbSlots];
+        size = new int[nbTrees*nbSlots];
+        root = new int[nbTrees];
+        Arrays.fill(root, NIL);
+
+        // Random priorities keep the trees balanced on average. They can be
+        // shared across trees since each tree is independent.
+        priority = new int[nbSlots];
+        Random rng = new Random(0);
+        for (int s = 0; s < nbSlots; s++) {
+            priority[s] = rng.nextInt();
+        }
+
+    }
+
+    public void insert(int tree, int slot, double value) {
+        // Insert `value` in window `tree` under `slot`, which must be empty
+
+        int base = tree*nbSlots;
+        int node = base + slot;
+        values[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        size[node] = 1;
+
+        split(base, root[tree], value, slot);
+        root[tree] = merge(base, merge(base, splitLeft, node), splitRight);
+
+    }
+
+    public void remove(int tree, int slot) {
+        // Remove the value held by `slot` from window `tree`
+        root[tree] = remove(tree*nbSlots, root[tree], values[tree*nbSlots + slot], slot);
+    }
+
+    public double select(int tree, int k) {
+        // Return the k-th smallest value (0-based) of window `tree`
+
+        int base = tree*nbSlots;
+        int t = root[tree];
+        while (t != NIL) {
+            int leftSize = sizeOf(base, left[t]);
+            if (k < leftSize) {
+                t = abs(base, left[t]);
+            } else if (k == leftSize) {
+                return values[t];
+            } else {
+                k -= leftSize + 1;
+                t = abs(base, right[t]);
+            }
+        }
+        throw new IllegalArgumentException("Window has fewer than " + (k + 1) + " values.");
+
+    }
+
+    public int size(int tree) {
+        return (root[tree] == NIL) ? 0 : size[root[tree]];
+    }
+
+    public void clear() {
+        Arrays.fill(root, NIL);
+    }
+
+    // ------------------------------------------------------------------------
+    // Treap operations. Children are stored as slot numbers (relative to the
+    // tree's `base`) so that NIL can be told apart; `t` below is absolute.
+
+    private boolean less(int base, int slot, double value, int otherSlot) {
+        // Order by value, then by slot to break ties deterministically
+        double v = values[base + slot];
+        return v < value || (v == value && slot < otherSlot);
+    }
+
+    private void split(int base, int t, double value, int slot) {
+        // Split tree `t` into nodes < (value, slot) and nodes >= (value, slot)
+
+        if (t == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        int tSlot = t - base;
+        if (less(base, tSlot, value, slot)) {
+            split(base, abs(base, right[t]), value, slot);
+            right[t] = rel(base, splitLeft);
+            splitLeft = t;
+        } else {
+            split(base, abs(base, left[t]), value, slot);
+            left[t] = rel(base, splitRight);
+            splitRight = t;
+        }
+        updateSize(base, t);
+
+    }
+
+    private int merge(int base, int a, int b) {
+        // Merge trees `a` and `b`, where all values of `a` are before those of `b`
+
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priority[a - base] > priority[b - base]) {
+            right[a] = rel(base, merge(base, abs(base, right[a]), b));
+            updateSize(base, a);
+            return a;
+        } else {
+            left[b] = rel(base, merge(base, a, abs(base, left[b])));
+            updateSize(base, b);
+            return b;
+        }
+
+    }
+
+    private int remove(int base, int t, double value, int slot) {
+
+        if (t == NIL) {
+            throw new IllegalArgumentException("Slot " + slot + " is not in the window.");
+        }
+        int tSlot = t - base;
+        if (tSlot == slot) {
+            return merge(base, abs(base, left[t]), abs(base, right[t]));
+        }
+        if (less(base, tSlot, value, slot)) {
+            right[t] = rel(base, remove(base, abs(base, right[t]), value, slot));
+        } else {
+            left[t] = rel(base, remove(base, abs(base, left[t]), value, slot));
+        }
+        updateSize(base, t);
+        return t;
+
+    }
+
+    private void updateSize(int base, int t) {
+        size[t] = 1 + sizeOf(base, left[t]) + sizeOf(base, right[t]);
+    }
+
+    private int sizeOf(int base, int childSlot) {
+        return (childSlot == NIL) ? 0 : size[base + childSlot];
+    }
+
+    private static int abs(int base, int childSlot) {
+        return (childSlot == NIL) ? NIL : base + childSlot;
+    }
+
+    private static int rel(int base, int t) {
+        return (t == NIL) ? NIL : t - base;
+    }
+
+    public static void main(String[] args) {
+
+        // Slide a window of 20 values over random data and compare the
+        // order statistics with a sorted copy of the window
+        int windowLength = 20;
+        int nbValues = 10000;
+        SlidingOrderStatistics stats = new SlidingOrderStatistics(1, windowLength);
+        double[] window = new double[windowLength];
+        Random rng = new Random(1);
+
+        int nbErrors = 0;
+        for (int i = 0; i < nbValues; i++) {
+            int slot = i % windowLength;
+            if (i >= windowLength) {
+                stats.remove(0, slot);
+            }
+            window[slot] = Math.round(rng.nextGaussian()*4); // many ties
+            stats.insert(0, slot, window[slot]);
+
+            int n = Math.min(i + 1, windowLength);
+            double[] sorted = Arrays.copyOf(window, n);
+            Arrays.sort(sorted);
+            for (int k = 0; k < n; k++) {
+                if (stats.select(0, k) != sorted[k]) {
+                    nbErrors++;
+                }
+            }
+        }
+        System.out.println("Errors: " + nbErrors);
+
+    }
+
+}
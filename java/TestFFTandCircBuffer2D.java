@@ -76,7 +76,7 @@ public class TestFFTandCircBuffer2D {
 
 				// Compute log-PSD
 				for (int c = 0; c < nbCh; c++) {
-					logpower[c] = fft.computeLogPSD(x[c]);
+					fft.computeLogPSD(x[c], logpower[c]);
 				}
 
 				// Write new log-PSD in buffer
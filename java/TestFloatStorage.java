@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class TestFloatStorage {
+	// Accuracy report for the float storage mode of CircBuffer and PSDBuffer.
+	//
+	// Each recording in data/*_Raw_EEG1.csv is run through the same
+	// raw buffer -> log-PSD -> PSD buffer -> band power pipeline twice,
+	// once with double and once with float storage, and the maximum
+	// absolute differences in log-PSD and band power are printed.
+
+	public static double[][] getRealSignal(String filename) {
+		// Read a recording [nbSamples,nbCh], skipping the header, the
+		// timestamp column and incomplete (truncated) rows.
+
+		List<double[]> rows = new ArrayList<double[]>();
+
+		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+
+			String sCurrentLine = br.readLine(); // header
+			int nbFields = sCurrentLine.split(",").length;
+			while ((sCurrentLine = br.readLine()) != null) {
+				String[] fields = sCurrentLine.split(",");
+				if (fields.length != nbFields) {
+					continue;
+				}
+				double[] row = new double[nbFields - 1];
+				for (int c = 0; c < row.length; c++) {
+					row[c] = Double.parseDouble(fields[c + 1]);
+				}
+				rows.add(row);
+			}
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return rows.toArray(new double[0][]);
+
+	}
+
+	public static double[][][] runPipeline(double[][] signal, double fs, boolean useFloat) {
+		// Returns {last smoothed log-PSD [nbCh,nbBins], last smoothed band powers [nbCh,nbBands]}
+
+		int nbCh = signal[0].length;
+		int windowLength = (int)fs;
+		int step = (int)fs/10;
+		int fftLength = 256;
+		int fftBufferLength = 20;
+
+		CircBuffer rawBuffer = new CircBuffer(windowLength,nbCh,useFloat);
+		FFT fft = new FFT(windowLength, fftLength, fs);
+		int nbBins = fft.getFreqBins().length;
+		PSDBuffer psdBuffer = new PSDBuffer(fftBufferLength,nbCh,nbBins,useFloat);
+		BandPowerExtractor bandPowerExtractor = new BandPowerExtractor(fft.getFreqBins());
+		PSDBuffer bandPowerBuffer = new PSDBuffer(fftBufferLength,nbCh,bandPowerExtractor.getNbBands(),useFloat);
+
+		double[][] smoothLogPower = new double[nbCh][nbBins];
+		double[][] smoothBandPowers = new double[nbCh][bandPowerExtractor.getNbBands()];
+
+		for (int i = 0; i < signal.length; i++) {
+			rawBuffer.update(signal[i]);
+
+			if (i >= windowLength && rawBuffer.getPts() > step) {
+				rawBuffer.resetPts();
+
+				double[][] rawWindow = rawBuffer.extractTransposed(windowLength);
+				double[][] logpower = fft.computeLogPSD(rawWindow, new double[nbCh][nbBins]);
+
+				psdBuffer.update(logpower);
+				smoothLogPower = psdBuffer.mean();
+
+				bandPowerBuffer.update(bandPowerExtractor.extract(logpower));
+				smoothBandPowers = bandPowerBuffer.mean();
+			}
+		}
+
+		return new double[][][]{smoothLogPower, smoothBandPowers};
+
+	}
+
+	public static double maxAbsDiff(double[][] x, double[][] y) {
+		double maxDiff = 0;
+		for (int c = 0; c < x.length; c++) {
+			for (int n = 0; n < x[c].length; n++) {
+				maxDiff = Math.max(maxDiff, Math.abs(x[c][n] - y[c][n]));
+			}
+		}
+		return maxDiff;
+	}
+
+	public static void main(String[] args) {
+
+		String[] filenames = new String[]{
+			"../data/BandPass_FullSampled_Raw_EEG1.csv",
+			"../data/BandPass_Downsampled_Raw_EEG1.csv",
+			"../data/HighPass_FullSampled_Raw_EEG1.csv",
+			"../data/HighPass_Downsampled_Raw_EEG1.csv"};
+		double fs = 256.; // only defines the frequency grid; both paths use the same one
+
+		for (String filename: filenames) {
+			double[][] signal = getRealSignal(filename);
+			if (signal.length <= fs) {
+				System.out.println(filename + ": recording too short, skipped");
+				continue;
+			}
+
+			double[][][] doubleResult = runPipeline(signal, fs, false);
+			double[][][] floatResult = runPipeline(signal, fs, true);
+
+			System.out.println(filename + " (" + signal.length + " samples)");
+			System.out.println("  Max abs difference in log-PSD: " + maxAbsDiff(doubleResult[0], floatResult[0]));
+			System.out.println("  Max abs difference in band powers: " + maxAbsDiff(doubleResult[1], floatResult[1]));
+		}
+
+	}
+
+}
@@ -0,0 +1,157 @@
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+public class TestMultitaperPSD {
+	// Batched MultitaperPSD against one call per channel: same output
+	// (sequential and parallel paths), bytes allocated per call, and cost
+	// per step for 4 to 64 channels of 1 s windows at 256 Hz (NW = 3, 5
+	// tapers). The parallel path only runs with more than one core, e.g.
+	// with -Djava.util.concurrent.ForkJoinPool.common.parallelism=4.
+	//
+	// The power of white noise (integral of the PSD) must match its variance.
+	//
+	// Before that, MultitaperPSD is compared with a direct DFT of each
+	// tapered window, for even and odd FFT lengths, with and without
+	// zero-padding.
+
+	public static double[] directMultitaper(double[] x, int fftLength, double fs, double NW, int K) {
+		// Multitaper PSD of x with the tapers of MultitaperPSD.getTapers(),
+		// computed with a direct DFT
+
+		int l = x.length;
+		int nbBins = fftLength/2 + 1;
+		double[][] tapers = MultitaperPSD.getTapers(l, NW, K);
+		double mean = 0;
+		for (double v: x) {
+			mean += v;
+		}
+		mean /= l;
+
+		double[] psd = new double[nbBins];
+		for (double[] taper: tapers) {
+			for (int k = 0; k < nbBins; k++) {
+				double re = 0;
+				double im = 0;
+				for (int i = 0; i < l; i++) {
+					double v = taper[i]*(x[i] - mean);
+					re += v*Math.cos(2*Math.PI*k*i/fftLength);
+					im -= v*Math.sin(2*Math.PI*k*i/fftLength);
+				}
+				boolean single = (k == 0) || (fftLength % 2 == 0 && k == nbBins - 1);
+				psd[k] += (single ? 1 : 2)*(re*re + im*im)/(fs*K);
+			}
+		}
+		return psd;
+
+	}
+
+	public static void main(String[] args) {
+
+		// 0. Direct DFT reference
+		java.util.Random rand = new java.util.Random(1);
+		for (int[] config: new int[][]{{256, 256}, {255, 255}, {220, 256}, {200, 255}}) {
+			double[] x = new double[config[0]];
+			for (int i = 0; i < x.length; i++) {
+				x[i] = 840. + 10*Math.sin(0.3*i) + rand.nextGaussian();
+			}
+			MultitaperPSD direct = new MultitaperPSD(config[0], config[1], 256., 3, 5);
+			double[] psd = direct.computePSD(x, new double[direct.getNbBins()]);
+			double[] reference = directMultitaper(x, config[1], 256., 3, 5);
+			double maxRelDiff = 0;
+			for (int k = 0; k < reference.length; k++) {
+				maxRelDiff = Math.max(maxRelDiff, Math.abs(psd[k] - reference[k])/reference[k]);
+			}
+			System.out.println("Input " + config[0] + ", FFT " + config[1] + ": max relative difference with a direct DFT "
+				+ maxRelDiff);
+		}
+
+		double fs = 256.;
+		int N = 256;
+		double NW = 3;
+		int K = 5;
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		MultitaperPSD mt = new MultitaperPSD(N, N, fs, NW, K);
+
+		// 1. White noise
+		java.util.Random random = new java.util.Random(0);
+		double sigma = 3.;
+		double[][] noise = new double[200][N];
+		double power = 0;
+		double[] psd = new double[mt.getNbBins()];
+		for (double[] x: noise) {
+			for (int i = 0; i < N; i++) {
+				x[i] = sigma*random.nextGaussian();
+			}
+			mt.computePSD(x, psd);
+			for (double p: psd) {
+				power += p*fs/N/noise.length;
+			}
+		}
+		System.out.println("White noise: power " + power + " (expected " + sigma*sigma + ")");
+
+		for (int nbCh: new int[]{4, 16, 64}) {
+
+			double[][] windows = new double[nbCh][N];
+			for (int c = 0; c < nbCh; c++) {
+				for (int i = 0; i < N; i++) {
+					windows[c][i] = Math.sin(0.3*i + c) + random.nextGaussian();
+				}
+			}
+			double[][] expected = new double[nbCh][mt.getNbBins()];
+			double[][] out = new double[nbCh][mt.getNbBins()];
+
+			// 2. Same output
+			for (int c = 0; c < nbCh; c++) {
+				mt.computePSD(windows[c], expected[c]);
+			}
+			double maxDiff = 0;
+			for (int threshold: new int[]{Integer.MAX_VALUE, 0}) {
+				mt.setParallelThreshold(threshold);
+				mt.computePSD(windows, out);
+				for (int c = 0; c < nbCh; c++) {
+					for (int k = 0; k < out[c].length; k++) {
+						maxDiff = Math.max(maxDiff, Math.abs(out[c][k] - expected[c][k])/expected[c][k]);
+					}
+				}
+			}
+
+			// 3. Cost
+			int nbSteps = 20000/nbCh;
+			long[] times = new long[3];
+			long bytes = 0;
+			for (int run = 0; run < 2; run++) { // first run warms up the JIT
+				long startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					for (int c = 0; c < nbCh; c++) {
+						mt.computePSD(windows[c], out[c]);
+					}
+				}
+				times[0] = System.nanoTime() - startTime;
+
+				mt.setParallelThreshold(Integer.MAX_VALUE);
+				long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+				startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					mt.computePSD(windows, out);
+				}
+				times[1] = System.nanoTime() - startTime;
+				bytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+				mt.setParallelThreshold(0);
+				startTime = System.nanoTime();
+				for (int i = 0; i < nbSteps; i++) {
+					mt.computePSD(windows, out);
+				}
+				times[2] = System.nanoTime() - startTime;
+			}
+
+			System.out.println(nbCh + " channels: max relative difference " + maxDiff + "; loop " + times[0]/nbSteps
+				+ " ns/step, batched " + times[1]/nbSteps + " ns/step (" + bytes/nbSteps + " bytes/step), batched parallel "
+				+ times[2]/nbSteps + " ns/step");
+		}
+
+	}
+
+}
@@ -0,0 +1,62 @@
+import java.util.Random;
+
+public class TestPairedFFT {
+	// Paired-channel mode of FFT.computeLogPSD(double[][], double[][])
+	// against the per-channel path, for even and odd numbers of channels,
+	// zero-padded, truncated, even and odd FFT lengths, on noisy signals
+	// with a DC offset and on channels of very different amplitudes. The
+	// largest absolute difference of log10(PSD) is printed (a difference d
+	// is a relative error of about 2.3*d on the power).
+
+	public static void main(String[] args) {
+
+		Random random = new Random(0);
+		double fs = 256.;
+		int[][] configs = {{256, 256}, {220, 256}, {220, 128}, {33, 33}, {40, 31}};
+
+		for (int nbCh: new int[]{2, 5, 8}) {
+			for (int[] config: configs) {
+				FFT fft = new FFT(config[0], config[1], fs);
+				double[][] x = new double[nbCh][config[0]];
+				for (int c = 0; c < nbCh; c++) {
+					for (int i = 0; i < config[0]; i++) {
+						x[c][i] = 840. + 10*Math.sin(2*Math.PI*10*i/fs + c) + random.nextGaussian();
+					}
+				}
+				double[][] expected = fft.computeLogPSD(x, new double[nbCh][fft.getNbFftPoints()]);
+				fft.setPairChannels(true);
+				double[][] paired = fft.computeLogPSD(x, new double[nbCh][fft.getNbFftPoints()]);
+				fft.setParallelThreshold(0); // parallel path, with more than one core
+				double[][] pairedParallel = fft.computeLogPSD(x, new double[nbCh][fft.getNbFftPoints()]);
+
+				double maxDiff = 0;
+				for (int c = 0; c < nbCh; c++) {
+					for (int k = 0; k < expected[c].length; k++) {
+						maxDiff = Math.max(maxDiff, Math.abs(paired[c][k] - expected[c][k]));
+						maxDiff = Math.max(maxDiff, Math.abs(pairedParallel[c][k] - expected[c][k]));
+					}
+				}
+				System.out.println(nbCh + " channels, input " + config[0] + ", FFT " + config[1]
+					+ ": max abs difference of log10(PSD) " + maxDiff);
+			}
+		}
+
+		// Channels 1000 times apart in amplitude
+		FFT fft = new FFT(256, 256, fs);
+		double[][] x = new double[2][256];
+		for (int i = 0; i < 256; i++) {
+			x[0][i] = 1000*random.nextGaussian();
+			x[1][i] = random.nextGaussian();
+		}
+		double[][] expected = fft.computeLogPSD(x, new double[2][fft.getNbFftPoints()]);
+		fft.setPairChannels(true);
+		double[][] paired = fft.computeLogPSD(x, new double[2][fft.getNbFftPoints()]);
+		double maxDiff = 0;
+		for (int k = 0; k < expected[1].length; k++) {
+			maxDiff = Math.max(maxDiff, Math.abs(paired[1][k] - expected[1][k]));
+		}
+		System.out.println("Weak channel paired with a 1000x stronger one: max abs difference of log10(PSD) " + maxDiff);
+
+	}
+
+}
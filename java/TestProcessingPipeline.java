@@ -48,8 +48,8 @@ public class TestProcessingPipeline {
 		// 3. Initialize filter and buffers
 		Filter bpFilt = new Filter(220., 1);
 		int bufferLength = 220;
-		CircBuffer rawBuffer = new CircBuffer(bufferLength,nbCh);
-		CircBuffer filtBuffer = new CircBuffer(bufferLength,nbCh);
+		CircBufferFlat rawBuffer = new CircBufferFlat(bufferLength,nbCh);
+		CircBufferFlat filtBuffer = new CircBufferFlat(bufferLength,nbCh);
 
 		// 4. Initialize FFT transform and buffers
 		FFT fft = new FFT(windowLength, fftLength, fs);
@@ -70,8 +70,8 @@ public class TestProcessingPipeline {
 		double[][] x;
 		double[][] y;
 
-		double[][] rawWindow = new double[windowLength][nbCh];
-		double[][] filtWindow = new double[windowLength][nbCh];
+		double[][] rawWindow = new double[nbCh][windowLength];
+		double[][] filtWindow = new double[nbCh][windowLength];
 
 		double[] filtResult = new double[nbCh];
 		double[][] logpower = new double[nbCh][nbBins];
@@ -99,19 +99,17 @@ public class TestProcessingPipeline {
 
 				/* ARTEFACT DETECTION */
 
-				filtWindow = filtBuffer.extractTransposed(windowLength); // Extract latest filtered samples 
+				filtBuffer.extractTransposedInto(filtWindow); // Extract latest filtered samples
 				noiseDecisions = noiseDetector.detectArtefact(filtWindow); // Detect artefacts
 				// TODO: Highlight that epoch in the live plot if it is bad
 
 
 				/* PSD COMPUTATION */
 
-				rawWindow = rawBuffer.extractTransposed(windowLength); // Extract latest raw samples for FFT computation
+				rawBuffer.extractTransposedInto(rawWindow); // Extract latest raw samples for FFT computation
 
 				// Compute log-PSD
-				for (int c = 0; c < nbCh; c++) {
-					logpower[c] = fft.computeLogPSD(rawWindow[c]);
-				}
+				fft.computeLogPSD(rawWindow, logpower);
 
 				psdBuffer.update(logpower,noiseDecisions); // Write new log-PSD in buffer
 				smoothLogPower = psdBuffer.mean(); // Compute average log-PSD over buffer
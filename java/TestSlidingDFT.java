@@ -0,0 +1,114 @@
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestSlidingDFT {
+	// Drift and latency of SlidingDFT against FFT.computeLogPSD.
+	//
+	// 1. One hour of a noisy 4-channel signal at 256 Hz goes through a
+	// SlidingDFT with and without periodic resync; every 10 s its log-PSD
+	// is compared with FFT.computeLogPSD on the same window, and the largest
+	// absolute difference of log10(PSD) over each 10 minutes is printed.
+	//
+	// 2. Cost of a processing step of TestProcessingPipeline (log-PSD of
+	// all channels every fs/10 samples): with FFT all the work happens at
+	// the step, with SlidingDFT it is spread over the samples. The mean time
+	// per sample, the mean time of the samples at which a step happens, and
+	// the 99.9th percentile of the time per sample are printed.
+
+	public static double[][] noisySignal(double duration, int nbCh, double fs) {
+		double[][] signal = Filter.generateFakeSignal(duration, nbCh, fs);
+		Random random = new Random(42);
+		for (double[] x: signal) {
+			for (int c = 0; c < nbCh; c++) {
+				x[c] += 5*random.nextGaussian() + 840.; // with a DC offset, as in data/*_Raw_EEG1.csv
+			}
+		}
+		return signal;
+	}
+
+	public static void main(String[] args) {
+
+		double fs = 256.;
+		int nbCh = 4;
+		int windowLength = 256;
+		int fftLength = 256;
+
+		// 1. Drift
+		double[][] signal = noisySignal(3600, nbCh, fs);
+		FFT fft = new FFT(windowLength, fftLength, fs);
+		SlidingDFT resynced = new SlidingDFT(windowLength, fftLength, fs, nbCh);
+		SlidingDFT free = new SlidingDFT(windowLength, fftLength, fs, nbCh);
+		free.setResyncInterval(0);
+		CircBufferFlat buffer = new CircBufferFlat(windowLength, nbCh);
+		double[][] window = new double[nbCh][windowLength];
+		double[][] expected = new double[nbCh][fft.getNbFftPoints()];
+		double[][] logpower = new double[nbCh][fft.getNbFftPoints()];
+
+		int check = (int)(10*fs);
+		int report = (int)(600*fs);
+		double[] maxDiff = new double[2];
+		for (int i = 0; i < signal.length; i++) {
+			buffer.update(signal[i]);
+			resynced.update(signal[i]);
+			free.update(signal[i]);
+			if (i >= windowLength && i % check == 0) {
+				buffer.extractTransposedInto(window);
+				fft.computeLogPSD(window, expected);
+				SlidingDFT[] sdfts = {resynced, free};
+				for (int s = 0; s < 2; s++) {
+					sdfts[s].computeLogPSD(logpower);
+					for (int c = 0; c < nbCh; c++) {
+						for (int k = 0; k < logpower[c].length; k++) {
+							maxDiff[s] = Math.max(maxDiff[s], Math.abs(logpower[c][k] - expected[c][k]));
+						}
+					}
+				}
+			}
+			if ((i + 1) % report == 0) {
+				System.out.println((i + 1)/(int)fs/60 + " min: max abs difference of log10(PSD), with resync "
+					+ maxDiff[0] + ", without resync " + maxDiff[1]);
+				maxDiff = new double[2];
+			}
+		}
+
+		// 2. Latency
+		int step = (int)fs/10;
+		double[][] shortSignal = noisySignal(600, nbCh, fs);
+		long[][] times = new long[2][shortSignal.length];
+		for (int run = 0; run < 2; run++) { // first run warms up the JIT
+			for (int i = 0; i < shortSignal.length; i++) {
+				long startTime = System.nanoTime();
+				buffer.update(shortSignal[i]);
+				if (i % step == 0) {
+					buffer.extractTransposedInto(window);
+					fft.computeLogPSD(window, expected);
+				}
+				times[0][i] = System.nanoTime() - startTime;
+
+				startTime = System.nanoTime();
+				resynced.update(shortSignal[i]);
+				if (i % step == 0) {
+					resynced.computeLogPSD(logpower);
+				}
+				times[1][i] = System.nanoTime() - startTime;
+			}
+		}
+		String[] names = {"FFT", "SlidingDFT"};
+		for (int s = 0; s < 2; s++) {
+			long total = 0;
+			long totalStep = 0;
+			for (int i = 0; i < shortSignal.length; i++) {
+				total += times[s][i];
+				if (i % step == 0) {
+					totalStep += times[s][i];
+				}
+			}
+			long[] sorted = times[s].clone();
+			Arrays.sort(sorted);
+			System.out.println(names[s] + ": " + total/shortSignal.length + " ns/sample, " + totalStep/(shortSignal.length/step + 1)
+				+ " ns/step sample, 99.9th percentile " + sorted[(int)(0.999*sorted.length)] + " ns");
+		}
+
+	}
+
+}
@@ -0,0 +1,114 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+public class TestWarmStart {
+	// Start-of-session transient and state snapshot/restore.
+	//
+	// The recordings in data/*_Raw_EEG1.csv have a DC offset of ~840 uV.
+	// Starting a filter from a zero state turns that offset into a large
+	// step that rings for seconds; starting from the steady state for the
+	// first sample (initState) does not. The largest absolute output in
+	// the first second is printed for both, for Filter, FilterSOS and
+	// FilterChain.
+	//
+	// A state saved with snapshot() and restored into a new filter must
+	// then give exactly the same output as the original filter.
+
+	public static double maxAbs(double[][] x, int from, int to) {
+		double max = 0;
+		for (int i = from; i < to; i++) {
+			for (double v: x[i]) {
+				max = Math.max(max, Math.abs(v));
+			}
+		}
+		return max;
+	}
+
+	public static void main(String[] args) {
+
+		double[][] signal = TestFloatStorage.getRealSignal("../data/BandPass_FullSampled_Raw_EEG1.csv");
+		double fs = 256.;
+		int nbCh = signal[0].length;
+		int oneSecond = (int)fs;
+		FilterSpec spec = new FilterSpec(fs, "bandpass", 4, 1, 36);
+		System.out.println("First sample: " + Arrays.toString(signal[0]));
+
+		// 1. Filter (direct form)
+		Filter filt = new Filter(spec);
+		double[][] out = new double[signal.length][];
+		for (int warm = 0; warm < 2; warm++) {
+			double[][] z = new double[nbCh][filt.getNB()];
+			if (warm == 1) {
+				filt.initState(signal[0], z);
+			}
+			for (int i = 0; i < signal.length; i++) {
+				z = filt.transform(signal[i], z);
+				out[i] = Filter.extractFilteredSamples(z);
+			}
+			System.out.println("Filter, " + (warm == 1 ? "warm start" : "zero start") + ": max abs output in the first second "
+				+ maxAbs(out, 0, oneSecond) + ", afterwards " + maxAbs(out, oneSecond, signal.length));
+		}
+
+		// 2. FilterSOS, with snapshot/restore half-way
+		FilterSOS sosFilt = new FilterSOS(spec);
+		for (int warm = 0; warm < 2; warm++) {
+			FilterState state = new FilterState(nbCh, 2*sosFilt.getNbSections());
+			if (warm == 1) {
+				sosFilt.initState(signal[0], state);
+			}
+			for (int i = 0; i < signal.length; i++) {
+				out[i] = new double[nbCh];
+				sosFilt.transform(signal[i], out[i], state);
+			}
+			System.out.println("FilterSOS, " + (warm == 1 ? "warm start" : "zero start") + ": max abs output in the first second "
+				+ maxAbs(out, 0, oneSecond) + ", afterwards " + maxAbs(out, oneSecond, signal.length));
+		}
+
+		FilterState state = new FilterState(nbCh, 2*sosFilt.getNbSections());
+		sosFilt.initState(signal[0], state);
+		double[] y = new double[nbCh];
+		double[] snapshot = null;
+		double[][] reference = new double[signal.length][nbCh];
+		for (int i = 0; i < signal.length; i++) {
+			if (i == signal.length/2) {
+				snapshot = state.snapshot();
+			}
+			sosFilt.transform(signal[i], reference[i], state);
+		}
+		FilterState restored = new FilterState(nbCh, 2*sosFilt.getNbSections());
+		restored.restore(snapshot);
+		double maxDiff = 0;
+		for (int i = signal.length/2; i < signal.length; i++) {
+			sosFilt.transform(signal[i], y, restored);
+			for (int c = 0; c < nbCh; c++) {
+				maxDiff = Math.max(maxDiff, Math.abs(y[c] - reference[i][c]));
+			}
+		}
+		System.out.println("FilterSOS, max abs difference after restore: " + maxDiff);
+
+		// 3. FilterChain, with snapshot/restore half-way
+		FilterChain chain = new FilterChain(nbCh, new FilterSpec(fs, "bandstop", 2, 58, 62), spec);
+		chain.initState(signal[0]);
+		snapshot = null;
+		for (int i = 0; i < signal.length; i++) {
+			if (i == signal.length/2) {
+				snapshot = chain.snapshot();
+			}
+			chain.transform(signal[i], reference[i]);
+		}
+		System.out.println("FilterChain, warm start: max abs output in the first second "
+			+ maxAbs(reference, 0, oneSecond) + ", afterwards " + maxAbs(reference, oneSecond, signal.length));
+
+		FilterChain restoredChain = new FilterChain(nbCh, new FilterSpec(fs, "bandstop", 2, 58, 62), spec);
+		restoredChain.restore(snapshot);
+		maxDiff = 0;
+		for (int i = signal.length/2; i < signal.length; i++) {
+			restoredChain.transform(signal[i], y);
+			for (int c = 0; c < nbCh; c++) {
+				maxDiff = Math.max(maxDiff, Math.abs(y[c] - reference[i][c]));
+			}
+		}
+		System.out.println("FilterChain, max abs difference after restore: " + maxDiff);
+
+	}
+
+}
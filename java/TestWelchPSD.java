@@ -0,0 +1,154 @@
+public class TestWelchPSD {
+	// Streaming WelchPSD against recomputing every segment of the window at
+	// each processing step.
+	//
+	// 4 channels of noisy signal at 256 Hz, 2 s windows, 1 s Hann segments
+	// with 50% overlap (3 segments per window), and a step of 0.5 s (one
+	// hop): the streaming estimate transforms one new segment per step, the
+	// reference (a new WelchPSD fed the whole window) transforms three. Both
+	// must give the same PSD. The power of white noise (integral of the
+	// PSD) must match its variance.
+	//
+	// Before that, WelchPSD is compared with a direct DFT of each segment
+	// (no FFT, own Hann window), for even and odd segment lengths.
+
+	public static double[] directWelch(double[] x, int segmentLength, int overlap, double fs) {
+		// Welch PSD of x, with Hann segments starting every
+		// segmentLength-overlap samples, computed with a direct DFT
+
+		int hop = segmentLength - overlap;
+		int nbSegments = (x.length - segmentLength)/hop + 1;
+		int nbBins = segmentLength/2 + 1;
+		double[] w = new double[segmentLength];
+		double winPower = 0;
+		for (int i = 0; i < segmentLength; i++) {
+			w[i] = 0.5 - 0.5*Math.cos(2*Math.PI*i/(segmentLength - 1));
+			winPower += w[i]*w[i];
+		}
+
+		double[] psd = new double[nbBins];
+		for (int s = 0; s < nbSegments; s++) {
+			double mean = 0;
+			for (int i = 0; i < segmentLength; i++) {
+				mean += x[s*hop + i];
+			}
+			mean /= segmentLength;
+			for (int k = 0; k < nbBins; k++) {
+				double re = 0;
+				double im = 0;
+				for (int i = 0; i < segmentLength; i++) {
+					double v = w[i]*(x[s*hop + i] - mean);
+					re += v*Math.cos(2*Math.PI*k*i/segmentLength);
+					im -= v*Math.sin(2*Math.PI*k*i/segmentLength);
+				}
+				boolean single = (k == 0) || (segmentLength % 2 == 0 && k == nbBins - 1);
+				psd[k] += (single ? 1 : 2)*(re*re + im*im)/(fs*winPower)/nbSegments;
+			}
+		}
+		return psd;
+
+	}
+
+	public static void main(String[] args) {
+
+		// 0. Direct DFT reference, for even and odd segment lengths
+		java.util.Random rand = new java.util.Random(1);
+		for (int[] config: new int[][]{{512, 256, 128}, {255, 127, 63}, {300, 101, 50}}) {
+			double[][] x = new double[config[0]][1];
+			double[] x0 = new double[config[0]];
+			for (int i = 0; i < config[0]; i++) {
+				x0[i] = 840. + 10*Math.sin(0.3*i) + rand.nextGaussian();
+				x[i][0] = x0[i];
+			}
+			WelchPSD direct = new WelchPSD(config[0], config[1], config[2], "hann", 256., 1);
+			direct.updateBlock(x);
+			double[] psd = direct.computePSD(new double[1][direct.getNbBins()])[0];
+			double[] reference = directWelch(x0, config[1], config[2], 256.);
+			double maxRelDiff = 0;
+			for (int k = 0; k < reference.length; k++) {
+				maxRelDiff = Math.max(maxRelDiff, Math.abs(psd[k] - reference[k])/reference[k]);
+			}
+			System.out.println("Window " + config[0] + ", segments " + config[1] + ", overlap " + config[2]
+				+ ": max relative difference with a direct DFT " + maxRelDiff);
+		}
+
+		double fs = 256.;
+		int nbCh = 4;
+		int windowLength = 512;
+		int segmentLength = 256;
+		int overlap = 128;
+		int step = 128;
+
+		double[][] signal = TestSlidingDFT.noisySignal(600, nbCh, fs);
+		WelchPSD welch = new WelchPSD(windowLength, segmentLength, overlap, "hann", fs, nbCh);
+		double[][] psd = new double[nbCh][welch.getNbBins()];
+		double[][] expected = new double[nbCh][welch.getNbBins()];
+		double[][] window = new double[windowLength][];
+
+		// 1. Same PSD as a batch estimate on each window
+		double maxRelDiff = 0;
+		for (int i = 0; i < signal.length; i++) {
+			welch.update(signal[i]);
+			if (i + 1 >= windowLength && (i + 1) % step == 0) {
+				System.arraycopy(signal, i + 1 - windowLength, window, 0, windowLength);
+				WelchPSD batch = new WelchPSD(windowLength, segmentLength, overlap, "hann", fs, nbCh);
+				batch.updateBlock(window);
+				batch.computePSD(expected);
+				welch.computePSD(psd);
+				for (int c = 0; c < nbCh; c++) {
+					for (int k = 0; k < psd[c].length; k++) {
+						maxRelDiff = Math.max(maxRelDiff, Math.abs(psd[c][k] - expected[c][k])/expected[c][k]);
+					}
+				}
+			}
+		}
+		System.out.println("Max relative difference with batch estimates: " + maxRelDiff);
+
+		// 2. Power of white noise
+		java.util.Random random = new java.util.Random(0);
+		double sigma = 3.;
+		WelchPSD noiseWelch = new WelchPSD(60*(int)fs, segmentLength, overlap, "hann", fs, 1);
+		for (int i = 0; i < 60*fs; i++) {
+			noiseWelch.update(new double[]{sigma*random.nextGaussian()});
+		}
+		double[][] noisePSD = noiseWelch.computePSD(new double[1][noiseWelch.getNbBins()]);
+		double power = 0;
+		for (double p: noisePSD[0]) {
+			power += p*fs/segmentLength;
+		}
+		System.out.println("White noise: power " + power + " (expected " + sigma*sigma + ")");
+
+		// 3. Cost per step
+		for (int run = 0; run < 2; run++) { // first run warms up the JIT
+			WelchPSD batch = new WelchPSD(windowLength, segmentLength, overlap, "hann", fs, nbCh);
+			int nbSteps = 0;
+			long timeBatch = 0;
+			long timeStreaming = 0;
+			for (int i = 0; i + step <= signal.length; i += step) {
+				long startTime = System.nanoTime();
+				for (int n = i; n < i + step; n++) {
+					welch.update(signal[n]);
+				}
+				welch.computeLogPSD(psd);
+				timeStreaming += System.nanoTime() - startTime;
+
+				if (i + step >= windowLength) {
+					startTime = System.nanoTime();
+					batch.reset();
+					for (int n = i + step - windowLength; n < i + step; n++) {
+						batch.update(signal[n]);
+					}
+					batch.computeLogPSD(expected);
+					timeBatch += System.nanoTime() - startTime;
+					nbSteps++;
+				}
+			}
+			if (run == 1) {
+				System.out.println("Recomputing all segments: " + timeBatch/nbSteps + " ns/step, streaming: "
+					+ timeStreaming/(signal.length/step) + " ns/step");
+			}
+		}
+
+	}
+
+}
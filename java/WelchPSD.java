@@ -0,0 +1,247 @@
+import java.util.Arrays; // For printing arrays when debugging
+
+// Implements streaming Welch PSD estimation with overlapping segments
+public class WelchPSD {
+    // Welch's method averages the periodograms of overlapping, windowed
+    // segments of the analysis window, which gives a smoother PSD than the
+    // single periodogram of FFT.computeLogPSD.
+    //
+    // Successive analysis windows share most of their segments, so here
+    // each segment is transformed only once, as soon as its last sample has
+    // arrived, and its periodogram is kept in a ring of the last
+    // nbSegments periodograms. computePSD() only averages the ring.
+    //
+    // Segments start every hop = segmentLength - overlap samples from the
+    // start of the stream; the estimate covers the last nbSegments complete
+    // segments, i.e. the last windowLength samples when the number of
+    // samples received is a multiple of hop (e.g. when the processing step
+    // is a multiple of hop). Before enough samples have arrived, the
+    // segments received so far are averaged.
+    //
+    // Each segment has its mean removed and is windowed before its FFT. The
+    // output is a one-sided power spectral density (units^2/Hz, as
+    // scipy.signal.welch with scaling='density'), on the nbBins =
+    // segmentLength/2 + 1 frequencies of getFreqBins(), from 0 to fs/2.
+    //
+    // Args:
+    //  windowLength (int) : analysis window length, in samples
+    //  segmentLength (int) : segment length (also the FFT length)
+    //  overlap (int) : number of samples shared by consecutive segments
+    //  windowType (String) : any type of WindowFunctions (e.g. "hann")
+    //  samplingFrequency (double) : sampling frequency, in Hz
+    //  nbCh (int) : number of channels
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private int segmentLength;
+    private int hop;
+    private int nbSegments;
+    private int nbCh;
+    private int nbBins;
+    private double[] f;
+    private double[] win;
+    private double[] scale;
+
+    // Last segmentLength samples of each channel, stored twice so that a
+    // segment can always be read as one contiguous run starting at `oldest`
+    private double[][] history;
+    private int oldest;
+    private long nbSamples;
+
+    // Periodograms of the last nbSegments segments [nbSegments][nbCh][nbBins]
+    private double[][][] periodograms;
+    private int nextSegment;
+    private int nbSegmentsStored;
+
+    private double[] Y;
+
+    // ------------------------------------------------------------------------
+    // Constructor
+
+    public WelchPSD(int windowLength, int segmentLength, int overlap, String windowType,
+                    double samplingFrequency, int nbChannels) {
+
+        if (segmentLength > windowLength || overlap < 0 || overlap >= segmentLength) {
+            throw new IllegalArgumentException("Need overlap < segmentLength <= windowLength.");
+        }
+
+        this.segmentLength = segmentLength;
+        hop = segmentLength - overlap;
+        nbSegments = (windowLength - segmentLength)/hop + 1;
+        nbCh = nbChannels;
+        nbBins = segmentLength/2 + 1;
+
+        f = new double[nbBins];
+        for (int k = 0; k < nbBins; k++) {
+            f[k] = samplingFrequency*k/segmentLength;
+        }
+
+        win = WindowFunctions.get(windowType, segmentLength);
+
+        // Density scaling, with the power of negative frequencies folded
+        // onto positive ones (all bins but DC and, for an even length,
+        // Nyquist)
+        double winPower = 0;
+        for (double w: win) {
+            winPower += w*w;
+        }
+        scale = new double[nbBins];
+        Arrays.fill(scale, 2./(samplingFrequency*winPower));
+        scale[0] /= 2;
+        if (segmentLength % 2 == 0) {
+            scale[nbBins - 1] /= 2;
+        }
+
+        history = new double[nbCh][2*segmentLength];
+        periodograms = new double[nbSegments][nbCh][nbBins];
+        Y = new double[segmentLength];
+
+    }
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public void update(double[] x) {
+        // Add one multichannel sample `x` [nbCh]; transforms a new segment
+        // every `hop` samples
+
+        for (int c = 0; c < nbCh; c++) {
+            history[c][oldest] = x[c];
+            history[c][oldest + segmentLength] = x[c];
+        }
+        oldest = (oldest + 1 == segmentLength) ? 0 : oldest + 1;
+        nbSamples++;
+
+        if (nbSamples >= segmentLength && (nbSamples - segmentLength) % hop == 0) {
+            double[][] p = periodograms[nextSegment];
+            for (int c = 0; c < nbCh; c++) {
+                periodogram(history[c], oldest, p[c]);
+            }
+            nextSegment = (nextSegment + 1 == nbSegments) ? 0 : nextSegment + 1;
+            nbSegmentsStored = Math.min(nbSegmentsStored + 1, nbSegments);
+        }
+
+    }
+
+    public void updateBlock(double[][] block) {
+        // Add a block of samples [nbSamples,nbCh]
+        for (double[] x: block) {
+            update(x);
+        }
+    }
+
+    private void periodogram(double[] hist, int start, double[] out) {
+        // Scaled periodogram of the segment hist[start..start+segmentLength-1]
+
+        double mean = 0;
+        for (int i = 0; i < segmentLength; i++) {
+            mean += hist[start + i];
+        }
+        mean /= segmentLength;
+        for (int i = 0; i < segmentLength; i++) {
+            Y[i] = win[i]*(hist[start + i] - mean);
+        }
+
+        FFTPlanCache.get(segmentLength).realForward(Y);
+
+        FFT.packedPower(Y, segmentLength, scale, out, false);
+
+    }
+
+    public double[][] computePSD(double[][] out) {
+        // Average of the stored periodograms into `out` [nbCh,nbBins] (zeros
+        // if no segment is complete yet)
+
+        for (int c = 0; c < nbCh; c++) {
+            Arrays.fill(out[c], 0.);
+        }
+        for (int s = 0; s < nbSegmentsStored; s++) {
+            for (int c = 0; c < nbCh; c++) {
+                double[] p = periodograms[s][c];
+                double[] o = out[c];
+                for (int k = 0; k < nbBins; k++) {
+                    o[k] += p[k];
+                }
+            }
+        }
+        if (nbSegmentsStored > 0) {
+            double norm = 1./nbSegmentsStored;
+            for (int c = 0; c < nbCh; c++) {
+                for (int k = 0; k < nbBins; k++) {
+                    out[c][k] *= norm;
+                }
+            }
+        }
+        return out;
+
+    }
+
+    public double[][] computeLogPSD(double[][] out) {
+        // log10 of computePSD() into `out` [nbCh,nbBins]
+        computePSD(out);
+        for (int c = 0; c < nbCh; c++) {
+            for (int k = 0; k < nbBins; k++) {
+                out[c][k] = Math.log10(out[c][k]);
+            }
+        }
+        return out;
+    }
+
+    public void reset() {
+        for (int c = 0; c < nbCh; c++) {
+            Arrays.fill(history[c], 0.);
+        }
+        oldest = 0;
+        nbSamples = 0;
+        nextSegment = 0;
+        nbSegmentsStored = 0;
+    }
+
+    public double[] getFreqBins() {
+        return f;
+    }
+
+    public int getNbBins() {
+        return nbBins;
+    }
+
+    public int getNbSegments() {
+        return nbSegments;
+    }
+
+    public int getHop() {
+        return hop;
+    }
+
+    public static void main(String[] args) {
+
+        // 2 s windows at 256 Hz, 1 s Hann segments with 50% overlap
+        double fs = 256.;
+        int nbCh = 2;
+        int windowLength = 512;
+        int segmentLength = 256;
+        WelchPSD welch = new WelchPSD(windowLength, segmentLength, segmentLength/2, "hann", fs, nbCh);
+        System.out.println(welch.getNbSegments() + " segments of " + segmentLength + " samples, hop " + welch.getHop());
+
+        // A 20 Hz sine of amplitude A has a power of A^2/2, which the PSD
+        // integrated over the frequency axis should give back
+        double amp = 5.;
+        double[][] signal = new double[10*(int)fs][nbCh];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i][0] = amp*Math.sin(2*Math.PI*20*i/fs);
+            signal[i][1] = amp*Math.sin(2*Math.PI*20*i/fs) + 100.;
+        }
+        welch.updateBlock(signal);
+        double[][] psd = welch.computePSD(new double[nbCh][welch.getNbBins()]);
+        for (int c = 0; c < nbCh; c++) {
+            double power = 0;
+            for (double p: psd[c]) {
+                power += p*fs/segmentLength;
+            }
+            System.out.println("Channel " + c + ": power " + power + " (expected " + amp*amp/2 + ")");
+        }
+
+    }
+
+}
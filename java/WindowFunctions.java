@@ -0,0 +1,149 @@
+import java.util.Arrays; // For printing arrays when debugging
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Implements a process-wide cache of window function coefficients
+public class WindowFunctions {
+    // Every FFT (and WelchPSD) instance used to compute its own window, so
+    // hundreds of sessions with the same parameters held hundreds of copies
+    // of the same coefficients. Here each window is computed once per
+    // (type, length) and the same array is returned to every caller, from
+    // any thread.
+    //
+    // The arrays returned are shared: callers must not modify them.
+    //
+    // At most MAX_WINDOWS windows are cached, the least recently used being
+    // dropped first (callers still holding one keep a valid array).
+    //
+    // All windows are symmetric, as in MATLAB (see
+    // [http://www.mathworks.com/help/signal/windows.html]).
+    //
+    // Types: "hamming", "hann", "blackman", "flattop", "tukey" (ratio of
+    // taper 0.5, see tukey() for other ratios) and "rectangular".
+
+    // ------------------------------------------------------------------------
+    // Variables
+
+    private static final int MAX_WINDOWS = 64;
+
+    private static final Map<String, double[]> WINDOWS = Collections.synchronizedMap(
+        new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+                return size() > MAX_WINDOWS;
+            }
+        });
+
+    private static final double[] FLATTOP_COEFS = {0.21557895, 0.41663158, 0.277263158, 0.083578947, 0.006947368};
+
+    // ---------------------------------------------------------------------
+    // Methods
+
+    public static double[] get(String type, int L) {
+        // Shared coefficients of window `type` of length L
+        String name = type.toLowerCase();
+        if (name.equals("tukey")) {
+            return tukey(L, 0.5);
+        }
+        return WINDOWS.computeIfAbsent(name + " " + L, key -> compute(name, L));
+    }
+
+    public static double[] tukey(int L, double ratio) {
+        // Shared coefficients of a Tukey window of length L, with a cosine
+        // taper over `ratio` of its length (0: rectangular, 1: Hann)
+        return WINDOWS.computeIfAbsent("tukey " + L + " " + ratio, key -> computeTukey(L, ratio));
+    }
+
+    private static double[] compute(String type, int L) {
+
+        double[] w = new double[L];
+        if (L == 1) {
+            w[0] = 1.;
+            return w;
+        }
+
+        switch (type) {
+            case "hamming":
+                for (int n = 0; n < L; n++) {
+                    w[n] = 0.54 - 0.46*Math.cos(2*Math.PI*n/(L-1));
+                }
+                break;
+            case "hann":
+                for (int n = 0; n < L; n++) {
+                    w[n] = 0.5 - 0.5*Math.cos(2*Math.PI*n/(L-1));
+                }
+                break;
+            case "blackman":
+                for (int n = 0; n < L; n++) {
+                    w[n] = 0.42 - 0.5*Math.cos(2*Math.PI*n/(L-1)) + 0.08*Math.cos(4*Math.PI*n/(L-1));
+                }
+                break;
+            case "flattop":
+                for (int n = 0; n < L; n++) {
+                    double sign = 1;
+                    for (int k = 0; k < FLATTOP_COEFS.length; k++) {
+                        w[n] += sign*FLATTOP_COEFS[k]*Math.cos(2*Math.PI*k*n/(L-1));
+                        sign = -sign;
+                    }
+                }
+                break;
+            case "rectangular":
+                Arrays.fill(w, 1.);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown window type: " + type);
+        }
+        return w;
+
+    }
+
+    private static double[] computeTukey(int L, double ratio) {
+
+        if (ratio <= 0) {
+            return compute("rectangular", L);
+        } else if (ratio >= 1) {
+            return compute("hann", L);
+        }
+
+        double[] w = new double[L];
+        if (L == 1) {
+            w[0] = 1.;
+            return w;
+        }
+        for (int n = 0; n < L; n++) {
+            double x = (double)n/(L-1);
+            if (x < ratio/2) {
+                w[n] = 0.5*(1 + Math.cos(2*Math.PI/ratio*(x - ratio/2)));
+            } else if (x < 1 - ratio/2) {
+                w[n] = 1.;
+            } else {
+                w[n] = 0.5*(1 + Math.cos(2*Math.PI/ratio*(x - 1 + ratio/2)));
+            }
+        }
+        return w;
+
+    }
+
+    public static int size() {
+        // Number of windows in the cache
+        return WINDOWS.size();
+    }
+
+    public static void main(String[] args) {
+
+        for (String type: new String[]{"hamming", "hann", "blackman", "flattop", "tukey", "rectangular"}) {
+            System.out.println(type + ": " + Arrays.toString(get(type, 9)));
+        }
+
+        // The same array is returned for the same parameters
+        System.out.println("Shared: " + (get("Hamming", 256) == get("hamming", 256)) + ", " + size() + " windows cached");
+
+        for (int L = 10; L < 10 + 2*MAX_WINDOWS; L++) {
+            get("hann", L);
+        }
+        System.out.println(size() + " windows cached after " + 2*MAX_WINDOWS + " more lengths");
+
+    }
+
+}